@@ -0,0 +1,131 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates large spawns off both the EDT and the simulation thread. A spawn is
+ * cut into fixed-size batches that are filled in parallel, each with its own
+ * {@link SplittableRandom}. Finished batches are handed to the simulation in
+ * order, and each is appended in one step at the start of a tick, so a tick never
+ * sees a half-written batch.
+ *
+ * Batch random streams are split from one root in submission order. With a seed
+ * (-Dsim.seed) the same sequence of spawns produces exactly the same particles,
+ * however the batches are scheduled. Each spawn is announced to the simulation
+ * with its job seed, so an {@link InputRecorder} can log it and
+ * {@link #generateBatch} can rebuild any batch later without the others.
+ *
+ * If a batch fails, e.g. with an OutOfMemoryError on a huge spawn, the batches
+ * before it stay in the simulation, the rest are dropped without being filled,
+ * and the listener hears about it once through {@link ProgressListener#onFailure}.
+ */
+class BulkSpawner {
+    static final int BATCH_SIZE = 1 << 16;
+
+    /** Called from worker threads as batches land in the simulation. */
+    interface ProgressListener {
+        void onProgress(long spawned, long total);
+
+        /** Called once if the spawn stops early, after {@code spawned} of {@code total} particles landed. */
+        default void onFailure(long spawned, long total, Throwable error) {
+        }
+    }
+
+    private final Simulation simulation;
+    private final ExecutorService workers;
+    private final SplittableRandom root;
+    private final AtomicInteger nextJob = new AtomicInteger();
+
+    BulkSpawner(Simulation simulation, int threads, Long seed) {
+        this.simulation = simulation;
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "spawner");
+            t.setDaemon(true);
+            return t;
+        });
+        this.root = seed != null ? new SplittableRandom(seed) : new SplittableRandom();
+    }
+
+    static Long seedFromSystemProperties() {
+        return Long.getLong("sim.seed");
+    }
+
+    /**
+     * Spawns {@code n} particles from {@code distribution}. Returns a future that
+     * completes once the last batch has been handed to the simulation, or
+     * exceptionally with the first batch that failed.
+     */
+    CompletableFuture<Void> spawn(SpawnDistribution distribution, int n, ProgressListener listener) {
+        long jobSeed;
+        synchronized (root) {
+            jobSeed = root.nextLong();
+        }
+        int job = nextJob.getAndIncrement();
+        simulation.submit(new SimulationCommand.BeginSpawn(job, distribution, n, jobSeed));
+
+        SplittableRandom jobRandom = new SplittableRandom(jobSeed);
+        AtomicLong spawned = new AtomicLong();
+        AtomicBoolean failed = new AtomicBoolean();
+        CompletableFuture<Void> inserted = CompletableFuture.completedFuture(null);
+        for (int start = 0, index = 0; start < n; start += BATCH_SIZE, index++) {
+            int count = Math.min(BATCH_SIZE, n - start);
+            int batchIndex = index;
+            SplittableRandom batchRandom = jobRandom.split();
+            CompletableFuture<ParticleStore> batch = CompletableFuture.supplyAsync(() -> {
+                if (failed.get()) {
+                    // an earlier batch failed, so this one would be dropped anyway
+                    throw new CancellationException();
+                }
+                try {
+                    ParticleStore store = new ParticleStore(count);
+                    store.fill(distribution, batchRandom, count);
+                    return store;
+                } catch (RuntimeException | Error e) {
+                    failed.set(true);
+                    throw e;
+                }
+            }, workers);
+            // chaining on the previous insert keeps batches in submission order
+            inserted = inserted.thenCombine(batch, (ignored, store) -> {
+                simulation.submit(new SimulationCommand.InsertBatch(job, batchIndex, store));
+                long done = spawned.addAndGet(count);
+                if (listener != null) {
+                    listener.onProgress(done, n);
+                }
+                return null;
+            });
+        }
+        return inserted.whenComplete((ignored, error) -> {
+            if (error != null && listener != null) {
+                listener.onFailure(spawned.get(), n, error instanceof CompletionException ? error.getCause() : error);
+            }
+        });
+    }
+
+    /** Rebuilds batch {@code index} of a spawn of {@code n} particles seeded with {@code jobSeed}. */
+    static ParticleStore generateBatch(SpawnDistribution distribution, long jobSeed, int n, int index) {
+        SplittableRandom jobRandom = new SplittableRandom(jobSeed);
+        SplittableRandom batchRandom = jobRandom.split();
+        for (int i = 0; i < index; i++) {
+            batchRandom = jobRandom.split();
+        }
+        int count = Math.min(BATCH_SIZE, n - index * BATCH_SIZE);
+        ParticleStore store = new ParticleStore(count);
+        store.fill(distribution, batchRandom, count);
+        return store;
+    }
+
+    static int batchCount(int n) {
+        return (n + BATCH_SIZE - 1) / BATCH_SIZE;
+    }
+
+    void shutdown() {
+        workers.shutdown();
+    }
+}
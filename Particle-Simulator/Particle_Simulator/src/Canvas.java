@@ -2,39 +2,187 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-import java.util.ArrayList;
-import java.util.List;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.util.concurrent.*;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.SplittableRandom;
 
 class Canvas extends JPanel implements KeyListener{
-    private List<Particle> particles;
-    private List<Particle> explorerParticles;
+    static final int DEFAULT_RENDER_HZ = 60;
+    // developer mode camera: screen pixels per pan key press, zoom factor per key press or wheel notch
+    private static final int PAN_STEP = 64;
+    private static final double ZOOM_STEP = 1.25;
+
+    private final Simulation simulation;
+    private final SimulationLoop simulationLoop;
+    private final BulkSpawner spawner;
+    private InputRecorder recorder;
+    private BulkSpawner.ProgressListener spawnProgressListener;
+    private Timer renderTimer;
+    private FrameSnapshot currentFrame;
+    private RasterRenderer rasterRenderer;
+    private DensityRenderer densityRenderer;
+    private LevelOfDetail levelOfDetail;
+    // null with -Drender.governor=false
+    private FrameGovernor governor;
+    // fresh frames passed over since the last repaint, while the governor paints only every Nth
+    private int framesPassedOver;
+    private final Viewport viewport;
+    // screen corners of the region being dragged out for removal, null when not selecting
+    private Point selectFrom, selectTo;
+    private boolean regionRemovalArmed;
     private boolean explorerMode = false;
-    private Particle explorerSprite;
-    private Particle developerSprite;
     private BufferedImage spriteImage;
-    private int frameCount = 0;
-    private int fps;
-    private long lastFPSTime = System.currentTimeMillis();
+    private final FrameMetrics metrics;
+    private final MetricsReporter metricsReporter;
+    private Timer titleTimer;
+    private long lastPaintNanos;
+    private long titleFramesPainted;
+    private long titleUpdateNanos;
     private final int WIDTH = 1280;
     private final int HEIGHT = 720;
-    private final int PERIPHERY_WIDTH = 33;
-    private final int PERIPHERY_HEIGHT = 19;
+    private final int PERIPHERY_WIDTH = Simulation.PERIPHERY_WIDTH;
+    private final int PERIPHERY_HEIGHT = Simulation.PERIPHERY_HEIGHT;
     private final int SPRITE_SIZE = 30;
     private final int PARTICLE_SIZE = 10;
+    private static final Color[] AGENT_COLORS = new Color[25];
+    static {
+        for (int seen = 0; seen < AGENT_COLORS.length; seen++) {
+            AGENT_COLORS[seen] = new Color(64 + 8 * seen, 32 + 4 * seen, 0);
+        }
+    }
     private JFrame frame;
-    private boolean explorerSpawned = false;
 
 
     Canvas() {
-        particles = new ArrayList<>();
-        explorerParticles = new ArrayList<>();
+        simulation = new Simulation(ParallelStepper.fromSystemProperties());
+        simulation.setMotionMode(Simulation.motionModeFromSystemProperties());
+        simulation.setCollisionsEnabled(Simulation.collisionsFromSystemProperties());
+        Long seed = BulkSpawner.seedFromSystemProperties();
+        Path recordPath = InputRecorder.pathFromSystemProperties();
+        if (seed == null && recordPath != null) {
+            // a recording needs a known seed for spawns made on the simulation thread
+            seed = new SplittableRandom().nextLong();
+        }
+        if (seed != null) {
+            simulation.setSeed(seed);
+        }
+        spawner = new BulkSpawner(simulation, Runtime.getRuntime().availableProcessors(), seed);
+
+        // -Dsim.replay=file plays a recording back, with its own settings and step size
+        InputReplay replay = null;
+        Path replayPath = InputReplay.pathFromSystemProperties();
+        if (replayPath != null) {
+            try {
+                replay = InputReplay.load(replayPath);
+                replay.configure(simulation);
+                simulation.setReplay(replay);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (replay != null) {
+            InputReplay r = replay;
+            simulationLoop = new SimulationLoop(simulation, SimulationLoop.simHzForDeltaTime(replay.getDeltaTime()),
+                    () -> r.onFrame(simulation));
+        } else {
+            simulationLoop = new SimulationLoop(simulation, SimulationLoop.simHzFromSystemProperties(), null);
+        }
+
+        // -Dsim.record=file logs every command with its tick until the program exits
+        if (recordPath != null) {
+            try {
+                recorder = new InputRecorder(recordPath, seed, simulationLoop.getDeltaTime(), simulation);
+                simulation.startRecording(recorder);
+                Runtime.getRuntime().addShutdownHook(new Thread(this::stopRecording, "recording"));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        // -Dsim.lifetime=seconds expires particles that old; sent as a command so recordings keep it
+        double lifetime = Simulation.lifetimeFromSystemProperties();
+        if (lifetime > 0 && replay == null) {
+            simulation.submit(new SimulationCommand.SetLifetime(lifetime));
+        }
+        // -Dsim.agents=N adds autonomous explorers, shown in developer mode
+        int agents = ExplorerAgents.countFromSystemProperties();
+        if (agents > 0 && replay == null) {
+            simulation.submit(new SimulationCommand.SetAgents(agents, ExplorerAgents.behaviourFromSystemProperties()));
+        }
+        // -Dsim.share=file also publishes every frame for SharedFrameViewer processes
+        try {
+            SharedFrameRing sharedFrames = SharedFrameRing.fromSystemProperties();
+            if (sharedFrames != null) {
+                simulation.setSharedFrames(sharedFrames);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
         setPreferredSize(new Dimension(WIDTH, HEIGHT));
+        viewport = new Viewport(WIDTH, HEIGHT);
+        // -Drender.pipeline=java2d keeps the original fillOval path around for comparison
+        if (!"java2d".equals(System.getProperty("render.pipeline"))) {
+            // one pool for all render passes: dots are rasterized in bands, density in slices
+            ParallelStepper renderPool = ParallelStepper.forRendering();
+            rasterRenderer = new RasterRenderer(WIDTH, HEIGHT, PARTICLE_SIZE, renderPool);
+            densityRenderer = new DensityRenderer(WIDTH, HEIGHT, renderPool);
+            levelOfDetail = LevelOfDetail.fromSystemProperties(WIDTH * HEIGHT);
+        }
         addKeyListener(this);
+        // developer mode: drag to pan, wheel to zoom about the cursor, shift-drag to remove a region
+        MouseAdapter viewControls = new MouseAdapter() {
+            private Point dragFrom;
+
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragFrom = e.getPoint();
+                if (!explorerMode && isHeapStorage() && (regionRemovalArmed || e.isShiftDown())) {
+                    selectFrom = e.getPoint();
+                    selectTo = selectFrom;
+                }
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                if (selectFrom != null) {
+                    removeParticlesIn(viewport.worldX(selectFrom.x), viewport.worldY(selectFrom.y),
+                            viewport.worldX(e.getX()), viewport.worldY(e.getY()));
+                    selectFrom = null;
+                    regionRemovalArmed = false;
+                    repaint();
+                }
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (selectFrom != null) {
+                    selectTo = e.getPoint();
+                    repaint();
+                } else if (dragFrom != null && !explorerMode) {
+                    viewport.pan(dragFrom.x - e.getX(), dragFrom.y - e.getY());
+                    repaint();
+                }
+                dragFrom = e.getPoint();
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (!explorerMode) {
+                    viewport.zoomAt(Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()), e.getX(), e.getY());
+                    repaint();
+                }
+            }
+        };
+        addMouseListener(viewControls);
+        addMouseMotionListener(viewControls);
+        addMouseWheelListener(viewControls);
         setFocusable(true);
         requestFocusInWindow();
 
@@ -45,59 +193,194 @@ class Canvas extends JPanel implements KeyListener{
             e.printStackTrace();
         }
 
-        ScheduledExecutorService executorService = Executors.newScheduledThreadPool(1);
-        executorService.scheduleAtFixedRate(this::calculateFPS, 0, 500, TimeUnit.MILLISECONDS);
+        metrics = simulation.getMetrics();
+        metricsReporter = MetricsReporter.fromSystemProperties(metrics);
+        // recordings and replays need every step the same length, so they keep the steps lever out
+        governor = FrameGovernor.fromSystemProperties(metrics, simulation.getStepper().getWorkers(),
+                levelOfDetail != null && levelOfDetail.isAuto(), recorder == null && replay == null);
+    }
+
+    /**
+     * Starts the simulation thread and the repaint timer. Repaints are requested at
+     * -Drender.hz (default 60) and only when the simulation has published a newer
+     * frame; Swing coalesces any that pile up.
+     */
+    void start() {
+        simulationLoop.start();
+        int renderHz = Math.max(1, Integer.getInteger("render.hz", DEFAULT_RENDER_HZ));
+        renderTimer = new Timer(1000 / renderHz, e -> {
+            if (simulation.hasFreshFrame()
+                    && (governor == null || ++framesPassedOver >= governor.getRenderEvery())) {
+                framesPassedOver = 0;
+                repaint();
+            }
+        });
+        renderTimer.setCoalesce(true);
+        renderTimer.start();
+
+        metricsReporter.start();
+        titleUpdateNanos = System.nanoTime();
+        titleTimer = new Timer(500, e -> updateTitle());
+        titleTimer.start();
+    }
+
+    FrameMetrics getMetrics() {
+        return metrics;
     }
 
     boolean isExplorerMode() {
         return explorerMode;
     }
 
+    /** False with -Dsim.storage=offheap|offheap32, which can't remove particles, age them or run agents. */
+    boolean isHeapStorage() {
+        return simulation.getOffHeapParticles() == null;
+    }
+
     void toggleExplorerMode() {
         explorerMode = !explorerMode;
-        if (!explorerSpawned) {
-            explorerSprite = new Particle(100, 100, 0, 0);
-            explorerSpawned = true;
+        simulation.submit(new SimulationCommand.SetExplorerMode(explorerMode));
+    }
+
+    /** Receives spawn progress from spawner threads; implementations must hop to the EDT themselves. */
+    void setSpawnProgressListener(BulkSpawner.ProgressListener listener) {
+        spawnProgressListener = listener;
+    }
+
+    CompletableFuture<Void> saveScene(Path path) {
+        SimulationCommand.SaveScene command = new SimulationCommand.SaveScene(path);
+        simulation.submit(command);
+        return command.done;
+    }
+
+    /** Completes with the loaded scene's explorer mode, from the simulation thread. */
+    CompletableFuture<Boolean> loadScene(Path path) {
+        SimulationCommand.LoadScene command = new SimulationCommand.LoadScene(path);
+        simulation.submit(command);
+        return command.done.thenApply(header -> (header.flags & SceneFile.FLAG_EXPLORER_MODE) != 0);
+    }
+
+    /** Syncs the EDT's view of the mode after the simulation changed it, e.g. by loading a scene. */
+    void setExplorerMode(boolean explorerMode) {
+        this.explorerMode = explorerMode;
+    }
+
+    /** Closes the recording, if any, at the simulation's current tick. */
+    void stopRecording() {
+        if (recorder == null) {
+            return;
+        }
+        SimulationCommand.StopRecording command = new SimulationCommand.StopRecording();
+        simulation.submit(command);
+        try {
+            command.done.get(1, TimeUnit.SECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            // the simulation thread is gone; keep what was logged, without an end marker
+            recorder.close(-1);
         }
     }
 
+    void clearParticles() {
+        simulation.submit(new SimulationCommand.Clear());
+    }
+
+    /** Removes the particles inside the rectangle spanned by two world points. */
+    void removeParticlesIn(double x0, double y0, double x1, double y1) {
+        simulation.submit(new SimulationCommand.RemoveRect(x0, y0, x1, y1));
+    }
+
+    /** Makes the next drag on the canvas select a region to remove, as shift-drag always does. */
+    void armRegionRemoval() {
+        regionRemovalArmed = true;
+    }
+
+    void expireParticles(double age) {
+        simulation.submit(new SimulationCommand.Expire(age));
+    }
+
+    void setParticleLifetime(double seconds) {
+        simulation.submit(new SimulationCommand.SetLifetime(seconds));
+    }
+
+    /** Replaces the autonomous explorers with {@code count} new ones; 0 removes them. */
+    void setExplorerAgents(int count) {
+        simulation.submit(new SimulationCommand.SetAgents(count, ExplorerAgents.behaviourFromSystemProperties()));
+    }
+
+    void fastForward(double seconds) {
+        simulation.submit(new SimulationCommand.FastForward(seconds));
+    }
+
     public void moveExplorerSprite(int dx, int dy) {
-        if (explorerSprite != null) {
-            explorerSprite.x += dx;
-            explorerSprite.y += dy;
-        }
+        simulation.submit(new SimulationCommand.MoveSprite(dx, dy));
     }
     @Override
     public void keyPressed(KeyEvent e) {
         if (explorerMode) {
             int keyCode = e.getKeyCode();
+            // bounds are checked on the simulation thread, which owns the sprite
             switch (keyCode) {
                 case KeyEvent.VK_UP:
                 case KeyEvent.VK_W:
-                    if (explorerSprite.y - SPRITE_SIZE > 0) {
-                        moveExplorerSprite(0, -5);
-                    }
+                    moveExplorerSprite(0, -Simulation.SPRITE_STEP);
                     break;
                 case KeyEvent.VK_DOWN:
                 case KeyEvent.VK_S:
-                    if (explorerSprite.y + SPRITE_SIZE < HEIGHT) {
-                        moveExplorerSprite(0, 5);
-                    }
+                    moveExplorerSprite(0, Simulation.SPRITE_STEP);
                     break;
                 case KeyEvent.VK_LEFT:
                 case KeyEvent.VK_A:
-                    if (explorerSprite.x - SPRITE_SIZE > 0) {
-                        moveExplorerSprite(-5, 0);
-                    }
+                    moveExplorerSprite(-Simulation.SPRITE_STEP, 0);
                     break;
                 case KeyEvent.VK_RIGHT:
                 case KeyEvent.VK_D:
-                    if (explorerSprite.x + SPRITE_SIZE < WIDTH) {
-                        moveExplorerSprite(5, 0);
-                    }
+                    moveExplorerSprite(Simulation.SPRITE_STEP, 0);
                     break;
             }
+        } else {
+            moveViewport(e.getKeyCode());
+        }
+    }
+
+    /** Developer mode keys: arrows or WASD pan, + and - zoom about the centre, F fits the world, 0 resets. */
+    private void moveViewport(int keyCode) {
+        switch (keyCode) {
+            case KeyEvent.VK_UP:
+            case KeyEvent.VK_W:
+                viewport.pan(0, -PAN_STEP);
+                break;
+            case KeyEvent.VK_DOWN:
+            case KeyEvent.VK_S:
+                viewport.pan(0, PAN_STEP);
+                break;
+            case KeyEvent.VK_LEFT:
+            case KeyEvent.VK_A:
+                viewport.pan(-PAN_STEP, 0);
+                break;
+            case KeyEvent.VK_RIGHT:
+            case KeyEvent.VK_D:
+                viewport.pan(PAN_STEP, 0);
+                break;
+            case KeyEvent.VK_PLUS:
+            case KeyEvent.VK_EQUALS:
+            case KeyEvent.VK_ADD:
+                viewport.zoomAt(ZOOM_STEP, WIDTH / 2.0, HEIGHT / 2.0);
+                break;
+            case KeyEvent.VK_MINUS:
+            case KeyEvent.VK_SUBTRACT:
+                viewport.zoomAt(1 / ZOOM_STEP, WIDTH / 2.0, HEIGHT / 2.0);
+                break;
+            case KeyEvent.VK_F:
+                viewport.fit();
+                break;
+            case KeyEvent.VK_0:
+            case KeyEvent.VK_NUMPAD0:
+                viewport.reset();
+                break;
+            default:
+                return;
         }
+        repaint();
     }
 
 
@@ -115,139 +398,176 @@ class Canvas extends JPanel implements KeyListener{
         frame = f;
     }
 
-    private void updateFPS() {
-        fps = frameCount * 2;
-        frameCount = 0;
-        lastFPSTime = System.currentTimeMillis();
-        if(!explorerSpawned)
-            frame.setTitle("Particle Simulator | FPS: " + calculateFPS());
+    /** FPS counts painted frames only, over the time since the previous title update. */
+    private void updateTitle() {
+        long now = System.nanoTime();
+        long painted = metrics.getFramesPainted();
+        int fps = (int) Math.round((painted - titleFramesPainted) * 1e9 / Math.max(1, now - titleUpdateNanos));
+        titleFramesPainted = painted;
+        titleUpdateNanos = now;
+        FrameSnapshot snapshot = currentFrame;
+        if (frame == null)
+            return;
+        String status = "";
+        if (snapshot != null && snapshot.agentCount > 0)
+            status += String.format(Locale.ROOT, " | Agents: %d (%.0f queries/s)",
+                    snapshot.agentCount, metrics.getAgentQueriesPerSecond());
+        if (metrics.getGovernorDecisions() > 0)
+            status += " | Governor: " + metrics.getGovernorState();
+        if(snapshot == null || !snapshot.explorerSpawned)
+            frame.setTitle("Particle Simulator | FPS: " + fps + status);
         else
-            frame.setTitle("Particle Simulator | FPS: " + calculateFPS() + " | X: "
-            + explorerSprite.x + " Y: " + explorerSprite.y);
-    }
-
-    private int calculateFPS() {
-        long currentTime = System.currentTimeMillis();
-        long elapsedTime = currentTime - lastFPSTime;
-
-        frameCount++;
-
-        // update FPS every 0.5 seconds
-        if (elapsedTime >= 500) {
-            updateFPS();
-        }
-
-        return fps;
+            frame.setTitle("Particle Simulator | FPS: " + fps + " | X: "
+            + snapshot.spriteX + " Y: " + snapshot.spriteY + status);
     }
 
     void addParticles(int n, double startX, double startY, double endX, double endY,
                       double initialAngle, double velocity) {
         if (!explorerMode) {
-            for (int i = 0; i < n; i++) {
-                double randomX = startX + Math.random() * (endX - startX);
-                double randomY = startY + Math.random() * (endY - startY);
-                particles.add(new Particle(randomX, randomY, initialAngle, velocity));
-            }
+            spawner.spawn(SpawnDistribution.byDistance(startX, startY, endX, endY, initialAngle, velocity), n,
+                    spawnProgressListener);
         }
     }
 
     void addParticlesByAngle(int n, double startX, double startY, double velocity, double startAngle, double endAngle) {
         if (!explorerMode) {
-            for (int i = 0; i < n; i++) {
-                double randomAngle = startAngle + Math.random() * (endAngle - startAngle);
-                particles.add(new Particle(startX, startY, randomAngle, velocity));
-            }
+            spawner.spawn(SpawnDistribution.byAngle(startX, startY, velocity, startAngle, endAngle), n,
+                    spawnProgressListener);
         }
     }
 
     void addParticlesByVelocity(int n, double startX, double startY, double angle, double startVelocity, double endVelocity) {
         if(!explorerMode) {
-            for (int i = 0; i < n; i++) {
-                double randomVelocity = startX + Math.random() * (endVelocity - startVelocity);
-                particles.add(new Particle(startX, startY, angle, randomVelocity));
-            }
+            spawner.spawn(SpawnDistribution.byVelocity(startX, startY, angle, startVelocity, endVelocity), n,
+                    spawnProgressListener);
         }
     }
 
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
+        long paintStart = System.nanoTime();
+        if (lastPaintNanos != 0) {
+            metrics.record(FrameMetrics.Phase.FRAME, paintStart - lastPaintNanos);
+        }
+        lastPaintNanos = paintStart;
+        long queryNanos = 0;
 
-        Image offscreen = createImage(getWidth(), getHeight());
-        Graphics2D offscreenGraphics = (Graphics2D) offscreen.getGraphics();
-        offscreenGraphics.setColor(Color.BLACK);
-        offscreenGraphics.fillRect(0,0, WIDTH, HEIGHT);
+        FrameSnapshot snapshot = simulation.acquireFrame();
+        currentFrame = snapshot;
 
-        if (explorerMode) {
-            renderExplorerMode(offscreenGraphics);
+        Image offscreen;
+        Graphics2D offscreenGraphics;
+        if (rasterRenderer != null) {
+            offscreen = rasterRenderer.getImage();
+            offscreenGraphics = rasterRenderer.getImage().createGraphics();
         } else {
-            renderDeveloperMode(offscreenGraphics);
+            offscreen = createImage(getWidth(), getHeight());
+            offscreenGraphics = (Graphics2D) offscreen.getGraphics();
+            offscreenGraphics.setColor(Color.BLACK);
+            offscreenGraphics.fillRect(0,0, WIDTH, HEIGHT);
         }
 
-        //IDK why but this is needed for more accurate fps measurement???
-        calculateFPS();
+        if (snapshot.explorerMode && rasterRenderer != null) {
+            rasterRenderer.clear(0);
+            long queryStart = System.nanoTime();
+            int visible = rasterRenderer.queryPeriphery(snapshot);
+            queryNanos = System.nanoTime() - queryStart;
+            metrics.record(FrameMetrics.Phase.QUERY, queryNanos);
+            rasterRenderer.drawPeriphery(snapshot, visible, RasterRenderer.PARTICLE_COLOR);
+            renderExplorerSprite(offscreenGraphics, snapshot);
+        } else if (snapshot.explorerMode) {
+            renderExplorerMode(offscreenGraphics, snapshot);
+        } else if (rasterRenderer != null) {
+            // only what the viewport can show counts towards the detail level
+            int inView = viewport.rangeEnd(snapshot, PARTICLE_SIZE) - viewport.rangeStart(snapshot, PARTICLE_SIZE);
+            if ((governor != null && governor.isDensity()) || levelOfDetail.useDensity(inView)) {
+                densityRenderer.draw(snapshot, viewport, rasterRenderer.getPixels());
+            } else {
+                long dotsStart = System.nanoTime();
+                rasterRenderer.drawDeveloperView(snapshot, viewport, 0, RasterRenderer.PARTICLE_COLOR);
+                levelOfDetail.recordDots(inView, System.nanoTime() - dotsStart);
+            }
+            renderDeveloperSprite(offscreenGraphics, snapshot);
+            renderAgents(offscreenGraphics, snapshot);
+        } else {
+            renderDeveloperMode(offscreenGraphics, snapshot);
+            renderAgents(offscreenGraphics, snapshot);
+        }
+        if (selectFrom != null && !snapshot.explorerMode) {
+            offscreenGraphics.setColor(Color.RED);
+            offscreenGraphics.drawRect(Math.min(selectFrom.x, selectTo.x), Math.min(selectFrom.y, selectTo.y),
+                    Math.abs(selectTo.x - selectFrom.x), Math.abs(selectTo.y - selectFrom.y));
+        }
+        offscreenGraphics.dispose();
+        long rasterEnd = System.nanoTime();
+        metrics.record(FrameMetrics.Phase.RASTER, rasterEnd - paintStart - queryNanos);
 
         g.drawImage(offscreen, 0, 0, this);
+        metrics.record(FrameMetrics.Phase.BLIT, System.nanoTime() - rasterEnd);
+        if (governor != null && governor.evaluate(System.nanoTime())) {
+            simulationLoop.setStepMultiplier(governor.getStepMultiplier());
+            simulation.getStepper().setActiveWorkers(governor.getWorkers());
+        }
     }
 
-    private void renderDeveloperMode(Graphics offscreenGraphics) {
+    private void renderDeveloperMode(Graphics offscreenGraphics, FrameSnapshot snapshot) {
         offscreenGraphics.setColor(Color.GREEN);
-        for (Particle particle : particles) {
-            offscreenGraphics.fillOval((int) particle.x - 5, (int) particle.y - 5, 10, 10);
+        float[] xs = snapshot.x, ys = snapshot.y;
+        for (int i = 0, n = snapshot.count; i < n; i++) {
+            offscreenGraphics.fillOval((int) viewport.screenX(xs[i]) - 5, (int) viewport.screenY(ys[i]) - 5, 10, 10);
         }
 
+        renderDeveloperSprite(offscreenGraphics, snapshot);
+    }
+
+    private void renderDeveloperSprite(Graphics offscreenGraphics, FrameSnapshot snapshot) {
         //Render sprite in actual location if spawned
-        if (explorerSpawned && spriteImage != null) {
-            int spriteX = (int) explorerSprite.x - SPRITE_SIZE / 2;
-            int spriteY = (int) explorerSprite.y - SPRITE_SIZE / 2;
+        if (snapshot.explorerSpawned && spriteImage != null) {
+            int spriteX = (int) viewport.screenX(snapshot.spriteX) - SPRITE_SIZE / 2;
+            int spriteY = (int) viewport.screenY(snapshot.spriteY) - SPRITE_SIZE / 2;
             offscreenGraphics.drawImage(spriteImage, spriteX, spriteY, SPRITE_SIZE, SPRITE_SIZE, null);
         }
     }
 
-    private void renderExplorerMode(Graphics g) {
+    /** Marks each explorer agent, brighter the more particles it sees. */
+    private void renderAgents(Graphics offscreenGraphics, FrameSnapshot snapshot) {
+        for (int a = 0, n = snapshot.agentCount; a < n; a++) {
+            offscreenGraphics.setColor(AGENT_COLORS[Math.min(AGENT_COLORS.length - 1, snapshot.agentVisible[a])]);
+            offscreenGraphics.fillRect((int) viewport.screenX(snapshot.agentX[a]) - 2,
+                    (int) viewport.screenY(snapshot.agentY[a]) - 2, 5, 5);
+        }
+    }
+
+    private void renderExplorerMode(Graphics g, FrameSnapshot snapshot) {
         // Render particles within the sprite's periphery
         g.setColor(Color.GREEN);
-        for (Particle particle : particles) {
-            int distanceX = (int) (particle.x - explorerSprite.x);
-            int distanceY = (int) (particle.y - explorerSprite.y);
-            if(Math.abs(distanceX) > PERIPHERY_WIDTH || Math.abs(distanceY) > PERIPHERY_HEIGHT)
-                continue; //Skip rendering particle if distance greater than periphery
-
-            g.fillOval((int) distanceX * (WIDTH/PERIPHERY_WIDTH),
-                    (int) distanceY * (HEIGHT/PERIPHERY_HEIGHT), 10, 10);
+        float[] xs = snapshot.x, ys = snapshot.y;
+        SpatialGrid grid = snapshot.grid;
+        // +1 covers particles whose truncated distance still lands on the periphery edge
+        int c0 = grid.col(snapshot.spriteX - PERIPHERY_WIDTH - 1), c1 = grid.col(snapshot.spriteX + PERIPHERY_WIDTH + 1);
+        int r0 = grid.row(snapshot.spriteY - PERIPHERY_HEIGHT - 1), r1 = grid.row(snapshot.spriteY + PERIPHERY_HEIGHT + 1);
+        for (int r = r0; r <= r1; r++) {
+            for (int i = grid.rangeStart(r, c0), end = grid.rangeEnd(r, c1); i < end; i++) {
+                int distanceX = (int) (xs[i] - snapshot.spriteX);
+                int distanceY = (int) (ys[i] - snapshot.spriteY);
+                if(Math.abs(distanceX) > PERIPHERY_WIDTH || Math.abs(distanceY) > PERIPHERY_HEIGHT)
+                    continue; //Skip rendering particle if distance greater than periphery
+
+                g.fillOval(distanceX * (WIDTH/PERIPHERY_WIDTH),
+                        distanceY * (HEIGHT/PERIPHERY_HEIGHT), 10, 10);
+            }
         }
 
+        renderExplorerSprite(g, snapshot);
+    }
+
+    private void renderExplorerSprite(Graphics g, FrameSnapshot snapshot) {
         // Render sprite image centered in the periphery
-        if (explorerSpawned && spriteImage != null) {
+        if (snapshot.explorerSpawned && spriteImage != null) {
             //Render this in center at all times
             g.drawImage(spriteImage, WIDTH / 2 - SPRITE_SIZE * 10, HEIGHT / 2 - SPRITE_SIZE * 10,
                     SPRITE_SIZE*20, SPRITE_SIZE*20, null);
         }
     }
-
-
-    void update() {
-        calculateFPS();
-        double deltaTime = 0.05;
-
-        // minimum target FPS: 60
-        long targetFrameTime = 1000 / 60;
-        long currentTime = System.currentTimeMillis();
-
-        // submit rendering tasks for particles
-        particles.forEach(particle -> particle.move(deltaTime));
-        repaint();
-
-        // calculates the time taken for the update and rendering tasks
-        long elapsedTime = System.currentTimeMillis() - currentTime;
-
-        // sleep to maintain a consistent frame rate
-        long sleepTime = Math.max(0, targetFrameTime - elapsedTime);
-
-        try {
-            Thread.sleep(sleepTime);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-    }
 }
\ No newline at end of file
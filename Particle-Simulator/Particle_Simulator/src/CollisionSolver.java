@@ -0,0 +1,198 @@
+import java.util.Arrays;
+
+/**
+ * Elastic particle-particle collisions for equal-mass discs of a fixed radius.
+ *
+ * Broadphase: particle indices are counting-sorted into a uniform grid whose
+ * cells are at least one diameter wide, so any touching pair lies in the same
+ * or an adjacent cell. Each cell is tested against itself and its E, SE, S and
+ * SW neighbours, which visits every candidate pair exactly once.
+ *
+ * The grid is cut into vertical stripes at least two columns wide. A stripe only
+ * writes to particles in its own columns and one column on either side, so all
+ * even stripes can be resolved in parallel, then all odd ones, without locks.
+ *
+ * Work per tick is bounded: a cell makes at most {@link #MAX_PAIRS_PER_PARTICLE}
+ * pair tests per particle against itself and as many against each neighbouring
+ * cell, so a tick makes at most 80 per particle whatever the crowding. Cells
+ * within that budget are tested in full. Crowded cells, such as a batch spawned at
+ * one point, test each particle against a window of the other cell's particles
+ * that moves on every tick, so every pair still gets its turn, just not every tick.
+ */
+class CollisionSolver {
+    static final double DEFAULT_RADIUS = 5;
+    // cells are widened past one diameter when the world would need more than this many
+    private static final double MAX_CELLS = 1 << 22;
+    /** Pair tests per particle a cell makes against itself and against each neighbouring cell, per tick. */
+    static final int MAX_PAIRS_PER_PARTICLE = 16;
+
+    private final double radius;
+    private final double cellSize;
+    private final int cols, rows;
+    private final int[] cellStart;
+    private int[] sorted = new int[0];
+    private int[] cellOf = new int[0];
+    // moves the window of partners tested in crowded cells
+    private long tick;
+
+    CollisionSolver(double radius) {
+        this.radius = radius;
+        this.cellSize = Math.max(2 * radius, Math.sqrt((double) ParticleStore.WIDTH * ParticleStore.HEIGHT / MAX_CELLS));
+        this.cols = Math.max(1, (int) Math.ceil(ParticleStore.WIDTH / cellSize));
+        this.rows = Math.max(1, (int) Math.ceil(ParticleStore.HEIGHT / cellSize));
+        this.cellStart = new int[cols * rows + 1];
+    }
+
+    double getRadius() {
+        return radius;
+    }
+
+    /** Resolves every overlapping, approaching pair once, exchanging momentum along the contact normal. */
+    void resolve(ParticleStore store, ParallelStepper stepper) {
+        int n = store.size();
+        if (n < 2) {
+            return;
+        }
+        buildIndex(store, n);
+        tick++;
+
+        int stripeWidth = Math.max(2, cols / (stepper.getWorkers() * 8));
+        int stripes = (cols + stripeWidth - 1) / stripeWidth;
+        for (int phase = 0; phase < 2; phase++) {
+            int first = phase;
+            int count = (stripes - first + 1) / 2;
+            stepper.forEachChunk(count, 1, (from, to) -> {
+                for (int s = from; s < to; s++) {
+                    int c0 = (first + 2 * s) * stripeWidth;
+                    resolveColumns(store, c0, Math.min(cols, c0 + stripeWidth));
+                }
+            });
+        }
+    }
+
+    private void buildIndex(ParticleStore store, int n) {
+        if (sorted.length < n) {
+            sorted = new int[store.x.length];
+            cellOf = new int[store.x.length];
+        }
+        double[] x = store.x, y = store.y;
+        int[] start = cellStart;
+        Arrays.fill(start, 0);
+        for (int i = 0; i < n; i++) {
+            int cell = row(y[i]) * cols + col(x[i]);
+            cellOf[i] = cell;
+            start[cell + 1]++;
+        }
+        for (int c = 0; c < start.length - 1; c++) {
+            start[c + 1] += start[c];
+        }
+        for (int i = 0; i < n; i++) {
+            sorted[start[cellOf[i]]++] = i;
+        }
+        for (int c = start.length - 1; c > 0; c--) {
+            start[c] = start[c - 1];
+        }
+        start[0] = 0;
+    }
+
+    private int col(double x) {
+        int c = (int) (x / cellSize);
+        return c < 0 ? 0 : (c >= cols ? cols - 1 : c);
+    }
+
+    private int row(double y) {
+        int r = (int) (y / cellSize);
+        return r < 0 ? 0 : (r >= rows ? rows - 1 : r);
+    }
+
+    private void resolveColumns(ParticleStore store, int c0, int c1) {
+        for (int c = c0; c < c1; c++) {
+            for (int r = 0; r < rows; r++) {
+                int cell = r * cols + c;
+                int from = cellStart[cell], to = cellStart[cell + 1];
+                if (from == to) {
+                    continue;
+                }
+                within(store, from, to);
+                if (c + 1 < cols) {
+                    against(store, from, to, cell + 1);
+                }
+                if (r + 1 < rows) {
+                    against(store, from, to, cell + cols);
+                    if (c + 1 < cols) {
+                        against(store, from, to, cell + cols + 1);
+                    }
+                    if (c > 0) {
+                        against(store, from, to, cell + cols - 1);
+                    }
+                }
+            }
+        }
+    }
+
+    private void within(ParticleStore store, int from, int to) {
+        int k = to - from;
+        // all k(k - 1)/2 pairs cost no more than the window below up to here
+        if (k <= 2 * MAX_PAIRS_PER_PARTICLE + 1) {
+            for (int a = from; a < to; a++) {
+                for (int b = a + 1; b < to; b++) {
+                    collide(store, sorted[a], sorted[b]);
+                }
+            }
+            return;
+        }
+        // each particle against the cellmates 1 + base .. MAX_PAIRS_PER_PARTICLE + base places after it
+        int base = (int) (tick * MAX_PAIRS_PER_PARTICLE % k);
+        for (int p = 0; p < k; p++) {
+            for (int j = 1; j <= MAX_PAIRS_PER_PARTICLE; j++) {
+                int d = base + j < k ? base + j : base + j - k;
+                if (d == 0) {
+                    continue;
+                }
+                int q = p + d < k ? p + d : p + d - k;
+                collide(store, sorted[from + p], sorted[from + q]);
+            }
+        }
+    }
+
+    private void against(ParticleStore store, int from, int to, int other) {
+        int otherFrom = cellStart[other], otherTo = cellStart[other + 1];
+        int m = otherTo - otherFrom;
+        if (m <= MAX_PAIRS_PER_PARTICLE) {
+            for (int a = from; a < to; a++) {
+                for (int b = otherFrom; b < otherTo; b++) {
+                    collide(store, sorted[a], sorted[b]);
+                }
+            }
+            return;
+        }
+        int base = (int) (tick * MAX_PAIRS_PER_PARTICLE % m);
+        for (int a = from; a < to; a++) {
+            int q = (a - from + base) % m;
+            for (int j = 0; j < MAX_PAIRS_PER_PARTICLE; j++) {
+                collide(store, sorted[a], sorted[otherFrom + q]);
+                q = q + 1 < m ? q + 1 : 0;
+            }
+        }
+    }
+
+    private void collide(ParticleStore store, int i, int j) {
+        double[] x = store.x, y = store.y, vx = store.vx, vy = store.vy;
+        double dx = x[j] - x[i];
+        double dy = y[j] - y[i];
+        double d2 = dx * dx + dy * dy;
+        double minDistance = 2 * radius;
+        if (d2 >= minDistance * minDistance || d2 == 0) {
+            return;
+        }
+        double dot = (vx[j] - vx[i]) * dx + (vy[j] - vy[i]) * dy;
+        if (dot >= 0) {
+            return; // already separating
+        }
+        double k = dot / d2;
+        vx[i] += k * dx;
+        vy[i] += k * dy;
+        vx[j] -= k * dx;
+        vy[j] -= k * dy;
+    }
+}
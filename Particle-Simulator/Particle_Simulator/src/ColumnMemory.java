@@ -0,0 +1,43 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Native memory for the columns of an {@link OffHeapParticles} store. A store
+ * opens one of these for each set of columns it allocates, and closes it once it
+ * has moved to bigger columns or is closed itself.
+ *
+ * {@link SegmentColumnMemory} allocates segments of one shared scope of the
+ * incubating foreign memory API, and closing it returns their memory to the
+ * system at once. It is only linked when the JVM was started with
+ * {@code --add-modules jdk.incubator.foreign}; without it {@link #open} quietly
+ * falls back to {@link #DIRECT} buffers, which are only freed once the collector
+ * finds them unreachable.
+ */
+interface ColumnMemory {
+
+    ColumnMemory DIRECT = bytes -> ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+
+    /** A zeroed native column of {@code bytes} bytes in native byte order. */
+    ByteBuffer allocate(int bytes);
+
+    /** Frees every column allocated here; none of them may be touched afterwards. */
+    default void close() {
+    }
+
+    default String name() {
+        return "direct";
+    }
+
+    /** Segments when the foreign memory module is in the boot layer, otherwise {@link #DIRECT}. */
+    static ColumnMemory open() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.foreign").isEmpty()) {
+            return DIRECT;
+        }
+        try {
+            // by name, so nothing links against the incubator module unless it is there
+            return (ColumnMemory) Class.forName("SegmentColumnMemory").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return DIRECT;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Level-of-detail renderer for particle counts past what individual dots can
+ * show: every particle adds one to the count of the pixel it sits on, and the
+ * counts are tone-mapped on a log scale into a heatmap that runs from dim green
+ * to white. Beyond the O(n) binning pass, which only increments an int per
+ * particle, the cost depends on the screen size, not on n.
+ *
+ * Binning is parallel: each worker counts its share of the particles into a
+ * private buffer, and the buffers are then summed per row band, so no pixel is
+ * ever written by two threads. All buffers are reused between frames.
+ *
+ * Drawn through a {@link Viewport}, only the snapshot rows in view are binned,
+ * and a zoomed-out view of a large world sums many world units into each pixel.
+ */
+class DensityRenderer {
+    private static final int PALETTE_SIZE = 256;
+    // counts up to this are tone-mapped through a per-frame table instead of Math.log
+    private static final int TONE_TABLE_SIZE = 4096;
+    private static final int ROW_GRAIN = 16;
+    // dimmest colour a non-empty pixel gets, as a palette index
+    private static final int MIN_LEVEL = 48;
+
+    private final int width, height;
+    private final ParallelStepper pool;
+    private final int[] palette = new int[PALETTE_SIZE];
+    private final int[] toneTable = new int[TONE_TABLE_SIZE + 1];
+    private final int[] rowMax;
+    // slice 0 doubles as the merged count buffer
+    private int[][] slices = new int[0][];
+
+    DensityRenderer(int width, int height, ParallelStepper pool) {
+        this.width = width;
+        this.height = height;
+        this.pool = pool;
+        this.rowMax = new int[height];
+        for (int i = 0; i < PALETTE_SIZE; i++) {
+            double t = i / (double) (PALETTE_SIZE - 1);
+            int green = (int) Math.round(255 * Math.min(1, t / 0.7));
+            int white = t <= 0.7 ? 0 : (int) Math.round(255 * (t - 0.7) / 0.3);
+            palette[i] = (white << 16) | (green << 8) | white;
+        }
+    }
+
+    /** Replaces every pixel with the density of particles {@code [0, n)} and returns the densest pixel's count. */
+    int draw(float[] xs, float[] ys, int n, int[] pixels) {
+        return draw(xs, ys, 0, n, 0, 0, 1, pixels);
+    }
+
+    /** Same for the particles of {@code snapshot} that {@code view} shows. */
+    int draw(FrameSnapshot snapshot, Viewport view, int[] pixels) {
+        return draw(snapshot.x, snapshot.y, view.rangeStart(snapshot, 0), view.rangeEnd(snapshot, 0),
+                view.getLeft(), view.getTop(), view.getZoom(), pixels);
+    }
+
+    private int draw(float[] xs, float[] ys, int first, int last, double left, double top, double zoom, int[] pixels) {
+        int n = last - first;
+        int sliceCount = n >= ParallelStepper.DEFAULT_SEQUENTIAL_THRESHOLD ? pool.getWorkers() : 1;
+        ensureSlices(sliceCount);
+        int[][] slices = this.slices;
+
+        pool.forEachChunk(sliceCount, 1, (from, to) -> {
+            for (int s = from; s < to; s++) {
+                bin(xs, ys, first + (int) ((long) n * s / sliceCount), first + (int) ((long) n * (s + 1) / sliceCount),
+                        left, top, zoom, slices[s]);
+            }
+        });
+        pool.forEachChunk(height, ROW_GRAIN, (r0, r1) -> merge(slices, sliceCount, r0, r1));
+
+        int max = 0;
+        for (int m : rowMax) {
+            max = Math.max(max, m);
+        }
+        double scale = max <= 1 ? 0 : (PALETTE_SIZE - 1 - MIN_LEVEL) / Math.log(max);
+        for (int c = 1, end = Math.min(max, TONE_TABLE_SIZE); c <= end; c++) {
+            toneTable[c] = palette[MIN_LEVEL + (int) (Math.log(c) * scale)];
+        }
+        pool.forEachChunk(height, ROW_GRAIN, (r0, r1) -> toneMap(slices[0], pixels, scale, r0, r1));
+        return max;
+    }
+
+    private void ensureSlices(int count) {
+        if (slices.length >= count) {
+            return;
+        }
+        int[][] grown = new int[count][];
+        for (int s = 0; s < count; s++) {
+            grown[s] = s < slices.length ? slices[s] : new int[width * height];
+        }
+        slices = grown;
+    }
+
+    private void bin(float[] xs, float[] ys, int from, int to, double left, double top, double zoom, int[] counts) {
+        int width = this.width, height = this.height;
+        for (int i = from; i < to; i++) {
+            int x = (int) ((xs[i] - left) * zoom), y = (int) ((ys[i] - top) * zoom);
+            if (x >= 0 && y >= 0 && x < width && y < height) {
+                counts[y * width + x]++;
+            }
+        }
+    }
+
+    /** Folds every other slice into slice 0 for rows {@code [r0, r1)}, zeroing them for the next frame. */
+    private void merge(int[][] slices, int sliceCount, int r0, int r1) {
+        int[] total = slices[0];
+        for (int r = r0; r < r1; r++) {
+            int from = r * width, to = from + width;
+            for (int s = 1; s < sliceCount; s++) {
+                int[] slice = slices[s];
+                for (int p = from; p < to; p++) {
+                    total[p] += slice[p];
+                    slice[p] = 0;
+                }
+            }
+            int max = 0;
+            for (int p = from; p < to; p++) {
+                max = Math.max(max, total[p]);
+            }
+            rowMax[r] = max;
+        }
+    }
+
+    private void toneMap(int[] counts, int[] pixels, double scale, int r0, int r1) {
+        int[] table = toneTable;
+        for (int p = r0 * width, end = r1 * width; p < end; p++) {
+            int c = counts[p];
+            if (c == 0) {
+                pixels[p] = 0;
+            } else if (c <= TONE_TABLE_SIZE) {
+                pixels[p] = table[c];
+            } else {
+                pixels[p] = palette[MIN_LEVEL + (int) (Math.log(c) * scale)];
+            }
+            counts[p] = 0;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Many explorer sprites steered by the simulation itself instead of the
+ * keyboard, each counting the particles inside its own periphery every tick.
+ *
+ * {@link #query} answers all of them together. The agents are counting-sorted
+ * into the cells of the frame's {@link SpatialGrid}, where the particles already
+ * are, and each occupied cell reads the particle rows around it once for all of
+ * its agents. The cells are independent, so they are spread over the stepper's
+ * pool. Counts match {@link RasterRenderer#queryPeriphery} exactly, with the
+ * same truncation to whole pixels.
+ *
+ * Owned by the simulation thread.
+ */
+class ExplorerAgents {
+    /** WANDER takes a random step every tick; PATROL keeps its heading and bounces off the canvas margin. */
+    enum Behaviour { WANDER, PATROL }
+
+    private final Behaviour behaviour;
+    private final SplittableRandom random;
+    private final int count;
+    private final double[] x, y;
+    private final int[] headingX, headingY;
+    // particles each agent saw at the last query
+    private final int[] visible;
+
+    // agents sorted by grid cell: cellStart[c] .. cellStart[c + 1] are the agents in cell c
+    private int[] cellStart = new int[0];
+    private final int[] cellOf, order, sortedVisible;
+    private final double[] sortedX, sortedY;
+    // cells holding at least one agent
+    private int[] occupied = new int[0];
+    private long lastVisibleTotal;
+    private boolean batched = true;
+
+    ExplorerAgents(int count, Behaviour behaviour, SplittableRandom random) {
+        this.count = Math.max(0, count);
+        this.behaviour = behaviour;
+        this.random = random;
+        x = new double[this.count];
+        y = new double[this.count];
+        headingX = new int[this.count];
+        headingY = new int[this.count];
+        visible = new int[this.count];
+        cellOf = new int[this.count];
+        order = new int[this.count];
+        sortedVisible = new int[this.count];
+        sortedX = new double[this.count];
+        sortedY = new double[this.count];
+        int step = Simulation.SPRITE_STEP;
+        for (int a = 0; a < this.count; a++) {
+            x[a] = Simulation.SPRITE_MARGIN + random.nextDouble(Simulation.WIDTH - 2.0 * Simulation.SPRITE_MARGIN);
+            y[a] = Simulation.SPRITE_MARGIN + random.nextDouble(Simulation.HEIGHT - 2.0 * Simulation.SPRITE_MARGIN);
+            do {
+                headingX[a] = random.nextInt(-step, step + 1);
+                headingY[a] = random.nextInt(-step, step + 1);
+            } while (headingX[a] == 0 && headingY[a] == 0);
+        }
+    }
+
+    static Behaviour behaviourFor(String name) {
+        return Behaviour.valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
+    /** -Dsim.agents=N starts N agents, -Dsim.agents.behaviour=wander|patrol steers them (default wander). */
+    static int countFromSystemProperties() {
+        return Integer.getInteger("sim.agents", 0);
+    }
+
+    static Behaviour behaviourFromSystemProperties() {
+        return behaviourFor(System.getProperty("sim.agents.behaviour", "wander"));
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    Behaviour getBehaviour() {
+        return behaviour;
+    }
+
+    double getX(int agent) {
+        return x[agent];
+    }
+
+    double getY(int agent) {
+        return y[agent];
+    }
+
+    /** Particles inside the agent's periphery at the last {@link #query}. */
+    int getVisible(int agent) {
+        return visible[agent];
+    }
+
+    /** False answers agent by agent instead, to measure the batched query against. */
+    void setBatched(boolean batched) {
+        this.batched = batched;
+    }
+
+    boolean isBatched() {
+        return batched;
+    }
+
+    /** Sum of all agents' counts at the last {@link #query}. */
+    long getVisibleTotal() {
+        return lastVisibleTotal;
+    }
+
+    /** Moves every agent one step, with the same margin rule as the keyboard-driven sprite. */
+    void move() {
+        int step = Simulation.SPRITE_STEP;
+        for (int a = 0; a < count; a++) {
+            int dx, dy;
+            if (behaviour == Behaviour.WANDER) {
+                dx = random.nextInt(-step, step + 1);
+                dy = random.nextInt(-step, step + 1);
+            } else {
+                if (!Simulation.canMoveSprite(x[a], y[a], headingX[a], 0)) {
+                    headingX[a] = -headingX[a];
+                }
+                if (!Simulation.canMoveSprite(x[a], y[a], 0, headingY[a])) {
+                    headingY[a] = -headingY[a];
+                }
+                dx = headingX[a];
+                dy = headingY[a];
+            }
+            if (Simulation.canMoveSprite(x[a], y[a], dx, dy)) {
+                x[a] += dx;
+                y[a] += dy;
+            }
+        }
+    }
+
+    /**
+     * Counts the particles of {@code frame} inside every agent's periphery and
+     * returns the total over all agents.
+     */
+    long query(FrameSnapshot frame, ParallelStepper stepper) {
+        if (!batched) {
+            return queryEach(frame);
+        }
+        SpatialGrid grid = frame.grid;
+        int occupiedCount = sortByCell(grid);
+        int[] occupied = this.occupied;
+        int grain = Math.max(1, occupiedCount / (stepper.getWorkers() * 8));
+        stepper.forEachChunk(occupiedCount, grain, (from, to) -> {
+            for (int k = from; k < to; k++) {
+                countCell(frame, occupied[k]);
+            }
+        });
+        long total = 0;
+        for (int s = 0; s < count; s++) {
+            visible[order[s]] = sortedVisible[s];
+            total += sortedVisible[s];
+        }
+        lastVisibleTotal = total;
+        return total;
+    }
+
+    /** The same counts agent by agent, each reading its own surroundings. */
+    private long queryEach(FrameSnapshot frame) {
+        int pw = Simulation.PERIPHERY_WIDTH, ph = Simulation.PERIPHERY_HEIGHT;
+        SpatialGrid grid = frame.grid;
+        float[] xs = frame.x, ys = frame.y;
+        long total = 0;
+        for (int a = 0; a < count; a++) {
+            double sx = x[a], sy = y[a];
+            int c0 = grid.col(sx - pw - 1), c1 = grid.col(sx + pw + 1);
+            int r0 = grid.row(sy - ph - 1), r1 = grid.row(sy + ph + 1);
+            int seen = 0;
+            for (int r = r0; r <= r1; r++) {
+                for (int i = grid.rangeStart(r, c0), end = grid.rangeEnd(r, c1); i < end; i++) {
+                    double dx = xs[i] - sx, dy = ys[i] - sy;
+                    if (dx > -pw - 1 && dx < pw + 1 && dy > -ph - 1 && dy < ph + 1) {
+                        seen++;
+                    }
+                }
+            }
+            visible[a] = seen;
+            total += seen;
+        }
+        lastVisibleTotal = total;
+        return total;
+    }
+
+    /** Copies positions and counts into {@code frame} for drawing. */
+    void copyTo(FrameSnapshot frame) {
+        frame.ensureAgentCapacity(count);
+        for (int a = 0; a < count; a++) {
+            frame.agentX[a] = (float) x[a];
+            frame.agentY[a] = (float) y[a];
+            frame.agentVisible[a] = visible[a];
+        }
+        frame.agentCount = count;
+    }
+
+    /** Counting-sorts the agents into {@code grid}'s cells and returns how many cells hold any. */
+    private int sortByCell(SpatialGrid grid) {
+        int cells = grid.cols * grid.rows;
+        if (cellStart.length != cells + 1) {
+            cellStart = new int[cells + 1];
+        }
+        int[] start = cellStart;
+        Arrays.fill(start, 0);
+        for (int a = 0; a < count; a++) {
+            int cell = grid.row(y[a]) * grid.cols + grid.col(x[a]);
+            cellOf[a] = cell;
+            start[cell + 1]++;
+        }
+        int occupiedCount = 0;
+        for (int c = 0; c < cells; c++) {
+            if (start[c + 1] > 0) {
+                if (occupiedCount == occupied.length) {
+                    occupied = Arrays.copyOf(occupied, Math.max(16, occupied.length * 2));
+                }
+                occupied[occupiedCount++] = c;
+            }
+            start[c + 1] += start[c];
+        }
+        // start[c] is the write cursor and ends up at start[c + 1]; shifted back afterwards
+        for (int a = 0; a < count; a++) {
+            int s = start[cellOf[a]]++;
+            order[s] = a;
+            sortedX[s] = x[a];
+            sortedY[s] = y[a];
+        }
+        for (int c = cells; c > 0; c--) {
+            start[c] = start[c - 1];
+        }
+        start[0] = 0;
+        return occupiedCount;
+    }
+
+    /**
+     * Counts for the agents of one cell. Every particle in the rows around the
+     * cell is read once and tested against each of them.
+     */
+    private void countCell(FrameSnapshot frame, int cell) {
+        int pw = Simulation.PERIPHERY_WIDTH, ph = Simulation.PERIPHERY_HEIGHT;
+        int from = cellStart[cell], to = cellStart[cell + 1];
+        double[] sx = sortedX, sy = sortedY;
+        int[] seen = sortedVisible;
+        double minX = sx[from], maxX = minX, minY = sy[from], maxY = minY;
+        for (int a = from; a < to; a++) {
+            minX = Math.min(minX, sx[a]);
+            maxX = Math.max(maxX, sx[a]);
+            minY = Math.min(minY, sy[a]);
+            maxY = Math.max(maxY, sy[a]);
+            seen[a] = 0;
+        }
+        SpatialGrid grid = frame.grid;
+        float[] xs = frame.x, ys = frame.y;
+        // +1 covers particles whose truncated distance still lands on the periphery edge
+        int c0 = grid.col(minX - pw - 1), c1 = grid.col(maxX + pw + 1);
+        int r0 = grid.row(minY - ph - 1), r1 = grid.row(maxY + ph + 1);
+        for (int r = r0; r <= r1; r++) {
+            for (int i = grid.rangeStart(r, c0), end = grid.rangeEnd(r, c1); i < end; i++) {
+                double px = xs[i], py = ys[i];
+                // an offset strictly inside +-(pw + 1) is one that truncates to within +-pw
+                for (int a = from; a < to; a++) {
+                    double dx = px - sx[a], dy = py - sy[a];
+                    if (dx > -pw - 1 && dx < pw + 1 && dy > -ph - 1 && dy < ph + 1) {
+                        seen[a]++;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Load generator for {@link ExplorerServer}: opens many explorer connections
+ * from one thread, wanders each sprite around at random, decodes every frame it
+ * receives and prints one JSON line of results. Latency is measured against the
+ * server's clock, so it is only meaningful on the same host.
+ *
+ * {@code java ExplorerLoadClient host=localhost port=7777 clients=100 seconds=10 moveHz=10}
+ *
+ *   clients  concurrent connections (default 100)
+ *   seconds  measured duration, after one second of warmup (default 10)
+ *   moveHz   moves sent per client per second (default 10)
+ */
+class ExplorerLoadClient {
+    private static final long WARMUP_NANOS = 1_000_000_000L;
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = HeadlessBenchmark.parseArgs(args);
+        String host = options.getOrDefault("host", "localhost");
+        int port = Integer.parseInt(options.getOrDefault("port", String.valueOf(ExplorerServer.DEFAULT_PORT)));
+        int clientCount = Integer.parseInt(options.getOrDefault("clients", "100"));
+        double seconds = Double.parseDouble(options.getOrDefault("seconds", "10"));
+        double moveHz = Double.parseDouble(options.getOrDefault("moveHz", "10"));
+
+        SplittableRandom random = new SplittableRandom();
+        Selector selector = Selector.open();
+        Client[] clients = new Client[clientCount];
+        for (int i = 0; i < clientCount; i++) {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+            channel.socket().setTcpNoDelay(true);
+            channel.configureBlocking(false);
+            clients[i] = new Client(channel);
+            channel.register(selector, SelectionKey.OP_READ, clients[i]);
+        }
+
+        LatencyHistogram latency = new LatencyHistogram();
+        long moveNanos = moveHz > 0 ? (long) (1e9 / moveHz) : Long.MAX_VALUE;
+        long start = System.nanoTime();
+        long measureFrom = start + WARMUP_NANOS;
+        long end = measureFrom + (long) (seconds * 1e9);
+        long nextMove = start;
+        long frames = 0, bytes = 0, visibleCells = 0, disconnected = 0;
+        boolean measuring = false;
+
+        for (long now = start; now < end; now = System.nanoTime()) {
+            if (!measuring && now >= measureFrom) {
+                measuring = true;
+                latency.roll();
+                frames = bytes = visibleCells = 0;
+            }
+            if (now >= nextMove) {
+                for (Client client : clients) {
+                    if (client.channel.isOpen()) {
+                        client.move(random);
+                    }
+                }
+                nextMove = moveNanos == Long.MAX_VALUE ? Long.MAX_VALUE : now + moveNanos;
+            }
+            selector.select(Math.max(1, Math.min(nextMove, end) - now) / 1_000_000 + 1);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Client client = (Client) key.attachment();
+                int read = client.channel.read(client.in);
+                if (read < 0) {
+                    key.cancel();
+                    client.channel.close();
+                    disconnected++;
+                    continue;
+                }
+                bytes += read;
+                ByteBuffer in = client.in;
+                in.flip();
+                while (in.remaining() >= 4 && in.remaining() >= 4 + in.getInt(in.position())) {
+                    int length = in.getInt();
+                    int next = in.position() + length;
+                    if (in.get() != ExplorerProtocol.MSG_FRAME) {
+                        throw new IllegalStateException("Unexpected message");
+                    }
+                    in.getLong();
+                    long sentNanos = in.getLong();
+                    in.getFloat();
+                    in.getFloat();
+                    ExplorerProtocol.applyFlips(in, client.view);
+                    in.position(next);
+                    latency.record(System.nanoTime() - sentNanos);
+                    frames++;
+                    visibleCells += client.visibleCells();
+                }
+                in.compact();
+            }
+        }
+        double elapsed = (System.nanoTime() - measureFrom) / 1e9;
+        LatencyHistogram.Stats stats = latency.roll();
+        for (Client client : clients) {
+            client.channel.close();
+        }
+        selector.close();
+
+        StringBuilder json = new StringBuilder("{");
+        HeadlessBenchmark.field(json, "clients", clientCount);
+        HeadlessBenchmark.field(json, "disconnected", disconnected);
+        HeadlessBenchmark.field(json, "seconds", elapsed);
+        HeadlessBenchmark.field(json, "framesPerSec", frames / elapsed);
+        HeadlessBenchmark.field(json, "framesPerSecPerClient", frames / elapsed / clientCount);
+        HeadlessBenchmark.field(json, "bytesPerSec", bytes / elapsed);
+        HeadlessBenchmark.field(json, "bytesPerFrame", frames == 0 ? 0 : (double) bytes / frames);
+        HeadlessBenchmark.field(json, "meanVisibleCells", frames == 0 ? 0 : (double) visibleCells / frames);
+        HeadlessBenchmark.field(json, "latencyP50Ms", stats.p50 / 1e6);
+        HeadlessBenchmark.field(json, "latencyP99Ms", stats.p99 / 1e6);
+        HeadlessBenchmark.field(json, "latencyMaxMs", stats.max / 1e6);
+        json.setLength(json.length() - 1);
+        System.out.println(json.append('}'));
+    }
+
+    private static final class Client {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(ExplorerProtocol.MAX_FRAME_BYTES * 2);
+        final ByteBuffer out = ByteBuffer.allocate(ExplorerProtocol.MOVE_BYTES).limit(0);
+        final long[] view = new long[ExplorerProtocol.VIEW_WORDS];
+        int dx, dy;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /** Keeps heading the same way most of the time, so sprites travel rather than jitter. */
+        void move(SplittableRandom random) throws IOException {
+            if (out.hasRemaining()) {
+                // the last move only partly fit into the socket buffer
+                channel.write(out);
+                return;
+            }
+            if ((dx == 0 && dy == 0) || random.nextInt(8) == 0) {
+                dx = random.nextInt(-Simulation.SPRITE_STEP, Simulation.SPRITE_STEP + 1);
+                dy = random.nextInt(-Simulation.SPRITE_STEP, Simulation.SPRITE_STEP + 1);
+            }
+            out.clear();
+            ExplorerProtocol.putMove(out, dx, dy);
+            out.flip();
+            channel.write(out);
+        }
+
+        int visibleCells() {
+            int cells = 0;
+            for (long word : view) {
+                cells += Long.bitCount(word);
+            }
+            return cells;
+        }
+    }
+}
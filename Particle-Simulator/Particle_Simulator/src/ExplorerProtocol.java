@@ -0,0 +1,139 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Wire format between {@link ExplorerServer} and its clients. Big-endian.
+ *
+ * Client to server, fixed 5 bytes:
+ * <pre>
+ *   byte  MSG_MOVE
+ *   short dx, dy     sprite step, clamped to +-SPRITE_STEP like the arrow keys
+ * </pre>
+ *
+ * Server to client, once per published frame:
+ * <pre>
+ *   int    payload length (bytes after this field)
+ *   byte   MSG_FRAME
+ *   long   tick
+ *   long   server System.nanoTime() at encoding, for latency on the same host
+ *   float  sprite x, sprite y
+ *   varint k, number of view cells that changed since the previous frame
+ *   varint[k] gaps between changed cell indices (first one is the index itself)
+ * </pre>
+ *
+ * The explorer view only shows which whole-pixel offsets around the sprite hold
+ * a particle, as the local explorer view does. A view is therefore a bitmap of
+ * {@link #VIEW_COLS} x {@link #VIEW_ROWS} cells, and a frame carries only the
+ * cells whose bit flipped since the last frame sent to that client. The client
+ * applies the flips to its own copy of the bitmap.
+ */
+final class ExplorerProtocol {
+    static final byte MSG_MOVE = 1;
+    static final byte MSG_FRAME = 2;
+    static final int MOVE_BYTES = 5;
+    static final int FRAME_HEADER_BYTES = 4 + 1 + 8 + 8 + 4 + 4;
+
+    static final int VIEW_COLS = 2 * Simulation.PERIPHERY_WIDTH + 1;
+    static final int VIEW_ROWS = 2 * Simulation.PERIPHERY_HEIGHT + 1;
+    static final int VIEW_CELLS = VIEW_COLS * VIEW_ROWS;
+    static final int VIEW_WORDS = (VIEW_CELLS + 63) >>> 6;
+    // every cell flipping, at up to 2 varint bytes per gap
+    static final int MAX_FRAME_BYTES = FRAME_HEADER_BYTES + 5 + 2 * VIEW_CELLS;
+
+    private ExplorerProtocol() {}
+
+    /** Cell of the view offset {@code (dx, dy)}, both already within the periphery. */
+    static int cell(int dx, int dy) {
+        return (dy + Simulation.PERIPHERY_HEIGHT) * VIEW_COLS + dx + Simulation.PERIPHERY_WIDTH;
+    }
+
+    /**
+     * Sets the bit of every view cell holding a particle of {@code frame} around
+     * {@code (spriteX, spriteY)}, using the same truncation as the local explorer view.
+     */
+    static void fillView(FrameSnapshot frame, double spriteX, double spriteY, long[] view) {
+        Arrays.fill(view, 0);
+        int pw = Simulation.PERIPHERY_WIDTH, ph = Simulation.PERIPHERY_HEIGHT;
+        SpatialGrid grid = frame.grid;
+        float[] xs = frame.x, ys = frame.y;
+        int c0 = grid.col(spriteX - pw - 1), c1 = grid.col(spriteX + pw + 1);
+        int r0 = grid.row(spriteY - ph - 1), r1 = grid.row(spriteY + ph + 1);
+        for (int r = r0; r <= r1; r++) {
+            for (int i = grid.rangeStart(r, c0), end = grid.rangeEnd(r, c1); i < end; i++) {
+                int dx = (int) (xs[i] - spriteX);
+                int dy = (int) (ys[i] - spriteY);
+                if (Math.abs(dx) <= pw && Math.abs(dy) <= ph) {
+                    int cell = cell(dx, dy);
+                    view[cell >>> 6] |= 1L << cell;
+                }
+            }
+        }
+    }
+
+    /** Writes a frame message carrying the cells that differ between {@code previous} and {@code current}. */
+    static void encodeFrame(ByteBuffer out, long tick, double spriteX, double spriteY,
+                            long[] previous, long[] current) {
+        int start = out.position();
+        out.position(start + FRAME_HEADER_BYTES);
+        int flips = 0;
+        for (int w = 0; w < VIEW_WORDS; w++) {
+            flips += Long.bitCount(previous[w] ^ current[w]);
+        }
+        putVarint(out, flips);
+        int last = -1;
+        for (int w = 0; w < VIEW_WORDS; w++) {
+            long diff = previous[w] ^ current[w];
+            while (diff != 0) {
+                int cell = (w << 6) + Long.numberOfTrailingZeros(diff);
+                putVarint(out, cell - last - 1);
+                last = cell;
+                diff &= diff - 1;
+            }
+        }
+        int end = out.position();
+        out.position(start);
+        out.putInt(end - start - 4).put(MSG_FRAME).putLong(tick).putLong(System.nanoTime())
+                .putFloat((float) spriteX).putFloat((float) spriteY);
+        out.position(end);
+    }
+
+    /**
+     * Applies the flips of a frame message to {@code view}. {@code in} is
+     * positioned after the header and must hold the whole message.
+     */
+    static void applyFlips(ByteBuffer in, long[] view) {
+        int flips = getVarint(in);
+        int cell = -1;
+        for (int k = 0; k < flips; k++) {
+            cell += getVarint(in) + 1;
+            if (cell >= VIEW_CELLS) {
+                throw new IllegalStateException("View cell out of range: " + cell);
+            }
+            view[cell >>> 6] ^= 1L << cell;
+        }
+    }
+
+    static void putMove(ByteBuffer out, int dx, int dy) {
+        out.put(MSG_MOVE).putShort((short) dx).putShort((short) dy);
+    }
+
+    static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+}
@@ -0,0 +1,259 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Serves explorer mode to many TCP clients at once. The physics runs once, on
+ * the usual {@link SimulationLoop}; every client steers its own sprite and, for
+ * every published frame, receives only what is inside that sprite's periphery,
+ * delta-encoded against the last frame it was sent (see {@link ExplorerProtocol}).
+ *
+ * Everything network-facing runs on one thread around a {@link Selector}. The
+ * simulation thread only wakes it up. A client whose socket can't keep up skips
+ * frames instead of queueing them: while its previous frame is still being
+ * written no new one is encoded, and the next delta is taken against what it
+ * actually received.
+ *
+ * {@code java ExplorerServer port=7777 particles=100000 scene=distance seed=1}
+ */
+class ExplorerServer implements Runnable {
+    static final int DEFAULT_PORT = 7777;
+    private static final long STATS_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final Simulation simulation;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final List<Session> sessions = new ArrayList<>();
+    private final SplittableRandom random = new SplittableRandom();
+    private volatile boolean running;
+
+    // server thread only
+    private long framesSent, bytesSent, framesSkipped, lastStatsNanos = System.nanoTime();
+
+    ExplorerServer(Simulation simulation, int port) throws IOException {
+        this.simulation = simulation;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /** Called from the simulation thread after each publish. */
+    void frameReady() {
+        selector.wakeup();
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        running = true;
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+                if (simulation.hasFreshFrame()) {
+                    broadcast(simulation.acquireFrame());
+                }
+                reportStats();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                e.printStackTrace();
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private void handle(SelectionKey key) throws IOException {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+        Session session = (Session) key.attachment();
+        try {
+            if (key.isReadable()) {
+                read(session);
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush(session);
+            }
+        } catch (IOException e) {
+            disconnect(session);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            // spread clients over the canvas so their peripheries differ
+            double x = Simulation.SPRITE_MARGIN + random.nextDouble(Simulation.WIDTH - 2.0 * Simulation.SPRITE_MARGIN);
+            double y = Simulation.SPRITE_MARGIN + random.nextDouble(Simulation.HEIGHT - 2.0 * Simulation.SPRITE_MARGIN);
+            Session session = new Session(channel, x, y);
+            session.key = channel.register(selector, SelectionKey.OP_READ, session);
+            sessions.add(session);
+        }
+    }
+
+    private void read(Session session) throws IOException {
+        ByteBuffer in = session.in;
+        if (session.channel.read(in) < 0) {
+            disconnect(session);
+            return;
+        }
+        in.flip();
+        while (in.remaining() >= ExplorerProtocol.MOVE_BYTES) {
+            if (in.get() != ExplorerProtocol.MSG_MOVE) {
+                disconnect(session);
+                return;
+            }
+            int dx = clamp(in.getShort()), dy = clamp(in.getShort());
+            if (Simulation.canMoveSprite(session.x, session.y, dx, dy)) {
+                session.x += dx;
+                session.y += dy;
+            }
+        }
+        in.compact();
+    }
+
+    private static int clamp(int step) {
+        return Math.max(-Simulation.SPRITE_STEP, Math.min(Simulation.SPRITE_STEP, step));
+    }
+
+    private void broadcast(FrameSnapshot frame) {
+        for (int i = sessions.size() - 1; i >= 0; i--) {
+            Session session = sessions.get(i);
+            if (session.out.hasRemaining()) {
+                framesSkipped++;
+                continue;
+            }
+            ExplorerProtocol.fillView(frame, session.x, session.y, session.current);
+            session.out.clear();
+            ExplorerProtocol.encodeFrame(session.out, frame.tick, session.x, session.y, session.sent, session.current);
+            session.out.flip();
+            long[] sent = session.sent;
+            session.sent = session.current;
+            session.current = sent;
+            framesSent++;
+            try {
+                flush(session);
+            } catch (IOException e) {
+                disconnect(session);
+            }
+        }
+    }
+
+    private void flush(Session session) throws IOException {
+        bytesSent += session.channel.write(session.out);
+        int ops = session.out.hasRemaining() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        if (session.key.interestOps() != ops) {
+            session.key.interestOps(ops);
+        }
+    }
+
+    private void disconnect(Session session) {
+        sessions.remove(session);
+        session.key.cancel();
+        try {
+            session.channel.close();
+        } catch (IOException ignored) {
+            // already gone
+        }
+    }
+
+    private void reportStats() {
+        long now = System.nanoTime();
+        if (now - lastStatsNanos < STATS_INTERVAL_NANOS) {
+            return;
+        }
+        double seconds = (now - lastStatsNanos) / 1e9;
+        if (framesSent + framesSkipped > 0) {
+            System.out.println(String.format(Locale.ROOT,
+                    "explorer-server clients=%d framesPerSec=%.1f MBPerSec=%.3f skippedPerSec=%.1f",
+                    sessions.size(), framesSent / seconds, bytesSent / seconds / (1 << 20), framesSkipped / seconds));
+        }
+        framesSent = bytesSent = framesSkipped = 0;
+        lastStatsNanos = now;
+    }
+
+    private void close() {
+        for (Session session : new ArrayList<>(sessions)) {
+            disconnect(session);
+        }
+        try {
+            server.close();
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static final class Session {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(ExplorerProtocol.MOVE_BYTES * 64);
+        final ByteBuffer out = ByteBuffer.allocateDirect(ExplorerProtocol.MAX_FRAME_BYTES).limit(0);
+        SelectionKey key;
+        double x, y;
+        // view as the client last received it, and scratch for the one being built
+        long[] sent = new long[ExplorerProtocol.VIEW_WORDS];
+        long[] current = new long[ExplorerProtocol.VIEW_WORDS];
+
+        Session(SocketChannel channel, double x, double y) {
+            this.channel = channel;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        Map<String, String> options = HeadlessBenchmark.parseArgs(args);
+        int port = Integer.parseInt(options.getOrDefault("port", String.valueOf(DEFAULT_PORT)));
+        int particles = Integer.parseInt(options.getOrDefault("particles", "100000"));
+
+        Simulation simulation = new Simulation(ParallelStepper.fromSystemProperties());
+        simulation.setMotionMode(Simulation.motionModeFromSystemProperties());
+        simulation.setCollisionsEnabled(Simulation.collisionsFromSystemProperties());
+        if (options.containsKey("seed")) {
+            simulation.setSeed(Long.parseLong(options.get("seed")));
+        }
+        simulation.spawn(HeadlessBenchmark.sceneDistribution(options.getOrDefault("scene", "distance")), particles);
+
+        ExplorerServer server = new ExplorerServer(simulation, port);
+        SimulationLoop loop = new SimulationLoop(simulation, SimulationLoop.simHzFromSystemProperties(), server::frameReady);
+        MetricsReporter.fromSystemProperties(simulation.getMetrics()).start();
+        loop.start();
+        System.out.println("explorer-server listening on port " + server.getPort() + " with " + particles + " particles");
+        server.run();
+    }
+}
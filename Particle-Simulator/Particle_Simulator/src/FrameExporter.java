@@ -0,0 +1,308 @@
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes rendered frames to disk on a fixed set of encoder threads, without a
+ * window. The caller renders each frame into its own {@link RasterRenderer} and
+ * {@link #submit}s the pixels, which are copied into one of a fixed pool of
+ * frame buffers. Encoders hand buffers back once a frame is written, and
+ * {@code submit} blocks while none is free. Memory therefore stays at
+ * {@code buffers} frames however far the encoders fall behind, and the
+ * simulation simply slows down to the rate the disk can take.
+ *
+ * A frame that fails to encode, with an IOException or a RuntimeException
+ * from ImageIO or the writer, stops the export: the encoders drop the rest and the
+ * next {@code submit} or {@code close} throws it. {@code submit} also gives up
+ * instead of waiting forever if every encoder thread has died.
+ *
+ * PNG writes one numbered file per frame into a directory. RAW appends packed
+ * 24-bit RGB frames to a single file; each encoder writes its frame at the
+ * frame's own offset, so the stream stays in order with several encoders. Play
+ * it with e.g. {@code ffmpeg -f rawvideo -pix_fmt rgb24 -s 1280x720 -r 60 -i frames.rgb out.mp4}.
+ *
+ * {@code java FrameExporter out=frames format=png frames=600 particles=1000000 view=developer}
+ *
+ *   out       directory for png, file for raw (default frames or frames.rgb)
+ *   format    png | raw (default png)
+ *   frames    number of frames to export (default 600)
+ *   view      developer | explorer | density, as in HeadlessBenchmark (default developer)
+ *   encoders  encoder threads (default all cores)
+ *   buffers   frames in flight between the simulation and the encoders (default 2 per encoder)
+ *   replay    an InputRecorder log to drive the simulation instead of spawning a scene
+ *   camera    fit | left,top,zoom, as in HeadlessBenchmark (default the top left corner at zoom 1)
+ *   particles, scene, dt, seed, workers: as in HeadlessBenchmark
+ */
+class FrameExporter implements AutoCloseable {
+    enum Format { PNG, RAW }
+
+    private static final Frame POISON = new Frame(null, -1);
+    // how often a submit waiting for a buffer checks that the encoders are still there
+    private static final long FREE_POLL_MILLIS = 100;
+
+    private final Format format;
+    private final Path out;
+    private final int width, height;
+    private final FileChannel raw;
+    private final BlockingQueue<Frame> free;
+    private final BlockingQueue<Frame> pending;
+    private final Thread[] encoders;
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong framesWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private volatile IOException failure;
+    private long stallNanos;
+    private long nextIndex;
+
+    FrameExporter(Format format, Path out, int width, int height, int encoderCount, int bufferCount) throws IOException {
+        this.format = format;
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        encoderCount = Math.max(1, encoderCount);
+        bufferCount = Math.max(encoderCount, bufferCount);
+        if (format == Format.PNG) {
+            Files.createDirectories(out);
+            raw = null;
+        } else {
+            raw = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        free = new ArrayBlockingQueue<>(bufferCount);
+        pending = new ArrayBlockingQueue<>(bufferCount + encoderCount);
+        for (int i = 0; i < bufferCount; i++) {
+            free.add(new Frame(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), 0));
+        }
+        encoders = new Thread[encoderCount];
+        running.set(encoderCount);
+        for (int i = 0; i < encoderCount; i++) {
+            encoders[i] = new Thread(this::encodeLoop, "frame-encoder-" + i);
+            encoders[i].setDaemon(true);
+            encoders[i].start();
+        }
+    }
+
+    /**
+     * Copies {@code pixels} into a free buffer and queues it, waiting for one to come
+     * back if none is free. Throws the encoders' failure instead, or an IOException
+     * once no encoder is left to free a buffer.
+     */
+    void submit(int[] pixels) throws IOException, InterruptedException {
+        checkFailure();
+        Frame frame = free.poll();
+        if (frame == null) {
+            long start = System.nanoTime();
+            while ((frame = free.poll(FREE_POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                checkFailure();
+                if (running.get() == 0) {
+                    throw new IOException("All frame encoder threads have stopped");
+                }
+            }
+            stallNanos += System.nanoTime() - start;
+        }
+        System.arraycopy(pixels, 0, frame.pixels, 0, width * height);
+        frame.index = nextIndex++;
+        pending.put(frame);
+    }
+
+    long getFramesWritten() {
+        return framesWritten.get();
+    }
+
+    long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /** Total time {@link #submit} spent waiting for an encoder to free a buffer. */
+    long getStallNanos() {
+        return stallNanos;
+    }
+
+    /**
+     * Waits for every submitted frame to be written. Interrupted, it stops the
+     * encoders instead of waiting for them and leaves the interrupt flag set;
+     * frames not yet written are lost.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            for (int i = 0; i < encoders.length; i++) {
+                pending.put(POISON);
+            }
+            for (Thread encoder : encoders) {
+                encoder.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Thread encoder : encoders) {
+                encoder.interrupt();
+            }
+        }
+        if (raw != null) {
+            raw.close();
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void encodeLoop() {
+        // packed rgb24 for the raw stream, one frame's worth per encoder
+        ByteBuffer rgb = format == Format.RAW ? ByteBuffer.allocateDirect(width * height * 3) : null;
+        try {
+            while (true) {
+                Frame frame = pending.take();
+                if (frame == POISON) {
+                    return;
+                }
+                try {
+                    if (failure == null) {
+                        bytesWritten.addAndGet(format == Format.PNG ? writePng(frame) : writeRaw(frame, rgb));
+                        framesWritten.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                } catch (RuntimeException e) {
+                    failure = new IOException("Could not encode frame " + frame.index, e);
+                } finally {
+                    free.put(frame);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    private long writePng(Frame frame) throws IOException {
+        Path file = out.resolve(String.format(Locale.ROOT, "frame-%06d.png", frame.index));
+        if (!ImageIO.write(frame.image, "png", file.toFile())) {
+            throw new IOException("No PNG writer available");
+        }
+        return Files.size(file);
+    }
+
+    private long writeRaw(Frame frame, ByteBuffer rgb) throws IOException {
+        rgb.clear();
+        for (int p : frame.pixels) {
+            rgb.put((byte) (p >> 16)).put((byte) (p >> 8)).put((byte) p);
+        }
+        rgb.flip();
+        long position = frame.index * rgb.limit();
+        while (rgb.hasRemaining()) {
+            position += raw.write(rgb, position);
+        }
+        return rgb.limit();
+    }
+
+    private static final class Frame {
+        final BufferedImage image;
+        final int[] pixels;
+        long index;
+
+        Frame(BufferedImage image, long index) {
+            this.image = image;
+            this.pixels = image == null ? null : ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            this.index = index;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+        Map<String, String> options = HeadlessBenchmark.parseArgs(args);
+        Format format = Format.valueOf(options.getOrDefault("format", "png").toUpperCase(Locale.ROOT));
+        Path out = Path.of(options.getOrDefault("out", format == Format.PNG ? "frames" : "frames.rgb"));
+        int frames = Integer.parseInt(options.getOrDefault("frames", "600"));
+        String view = options.getOrDefault("view", "developer");
+        int cores = Runtime.getRuntime().availableProcessors();
+        int encoderCount = Integer.parseInt(options.getOrDefault("encoders", String.valueOf(cores)));
+        int bufferCount = Integer.parseInt(options.getOrDefault("buffers", String.valueOf(2 * encoderCount)));
+        ParallelStepper stepper = options.containsKey("workers")
+                ? new ParallelStepper(Integer.parseInt(options.get("workers")),
+                        ParallelStepper.DEFAULT_CHUNK_SIZE, ParallelStepper.DEFAULT_SEQUENTIAL_THRESHOLD)
+                : ParallelStepper.fromSystemProperties();
+
+        Simulation simulation = new Simulation(stepper);
+        double deltaTime;
+        InputReplay replay = null;
+        if (options.containsKey("replay")) {
+            replay = InputReplay.load(Path.of(options.get("replay")));
+            replay.configure(simulation);
+            simulation.setReplay(replay);
+            deltaTime = replay.getDeltaTime();
+        } else {
+            deltaTime = Double.parseDouble(options.getOrDefault("dt", "0.05"));
+            simulation.setMotionMode(Simulation.motionModeFromSystemProperties());
+            simulation.setCollisionsEnabled(Simulation.collisionsFromSystemProperties());
+            if (options.containsKey("seed")) {
+                simulation.setSeed(Long.parseLong(options.get("seed")));
+            }
+            simulation.spawn(HeadlessBenchmark.sceneDistribution(options.getOrDefault("scene", "distance")),
+                    Integer.parseInt(options.getOrDefault("particles", "100000")));
+            if (view.equals("explorer")) {
+                simulation.setExplorerMode(true);
+            }
+        }
+
+        int width = Viewport.SCREEN_WIDTH, height = Viewport.SCREEN_HEIGHT;
+        RasterRenderer renderer = new RasterRenderer(width, height, 10, stepper);
+        DensityRenderer density = view.equals("density") ? new DensityRenderer(width, height, stepper) : null;
+        Viewport camera = Viewport.parse(options.get("camera"), width, height);
+        long renderNanos = 0;
+        long start = System.nanoTime(), lastProgress = start;
+        int exported = 0, particles;
+        FrameExporter exporter = new FrameExporter(format, out, width, height, encoderCount, bufferCount);
+        try (exporter) {
+            for (; exported < frames && (replay == null || !replay.isFinished(simulation.getTick())); exported++) {
+                long t0 = System.nanoTime();
+                HeadlessBenchmark.runTick(simulation, renderer, density, camera, deltaTime);
+                renderNanos += System.nanoTime() - t0;
+                exporter.submit(renderer.getPixels());
+
+                long now = System.nanoTime();
+                if (now - lastProgress >= 1_000_000_000L) {
+                    System.err.println(String.format(Locale.ROOT, "exported %d/%d frames, %.1f frames/s written",
+                            exporter.getFramesWritten(), frames, exporter.getFramesWritten() / ((now - start) / 1e9)));
+                    lastProgress = now;
+                }
+            }
+        } finally {
+            particles = simulation.particleCount();
+            simulation.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        StringBuilder json = new StringBuilder("{");
+        HeadlessBenchmark.field(json, "format", '"' + format.name().toLowerCase(Locale.ROOT) + '"');
+        HeadlessBenchmark.field(json, "view", '"' + view + '"');
+        HeadlessBenchmark.field(json, "particles", particles);
+        HeadlessBenchmark.field(json, "encoders", encoderCount);
+        HeadlessBenchmark.field(json, "buffers", bufferCount);
+        HeadlessBenchmark.field(json, "frames", exporter.getFramesWritten());
+        HeadlessBenchmark.field(json, "seconds", seconds);
+        HeadlessBenchmark.field(json, "framesPerSec", exporter.getFramesWritten() / seconds);
+        HeadlessBenchmark.field(json, "MBPerSec", exporter.getBytesWritten() / seconds / (1 << 20));
+        HeadlessBenchmark.field(json, "tickAndRenderMsMean", exported == 0 ? 0 : renderNanos / 1e6 / exported);
+        HeadlessBenchmark.field(json, "stalledMs", exporter.getStallNanos() / 1e6);
+        json.setLength(json.length() - 1);
+        System.out.println(json.append('}'));
+    }
+}
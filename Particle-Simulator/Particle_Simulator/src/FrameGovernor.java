@@ -0,0 +1,233 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Keeps frames near a target time by giving up quality while they run over and
+ * taking it back once there is room again. Every half second it compares the
+ * painted frame interval with the target, using the running phase totals in
+ * {@link FrameMetrics}, and moves at most one lever. The simulation gets the
+ * lever when it dropped steps or kept its thread busy most of the time; otherwise
+ * the drawing does.
+ *
+ * Drawing-bound frames pull, in order: {@code density} (draw the heatmap instead
+ * of dots), {@code workers} (halve the physics threads so drawing gets the cores)
+ * and {@code every} (paint only every 2nd, 3rd, then 4th frame). Simulation-bound
+ * frames first give back any workers taken and then pull {@code steps}, which
+ * takes 2, 3, then 4 times fewer physics steps, each that much longer. Levers are
+ * released newest first, once a frame needs less than half the target. A lever
+ * that has to be pulled again soon after a release is held longer the next time,
+ * so the governor settles rather than oscillates.
+ *
+ * The governor only decides; its owner applies the settings to the renderer, the
+ * {@link SimulationLoop} and the {@link ParallelStepper}. Every decision goes to
+ * {@link FrameMetrics}, so it shows up in the metrics log, CSV and JMX.
+ * Not thread-safe: one thread, the EDT in the window, calls {@link #evaluate}.
+ *
+ * Configured with -Drender.governor=true|false (default true) and
+ * -Drender.targetMs (default 16.7, 60 FPS).
+ */
+class FrameGovernor {
+    enum Lever { DENSITY, WORKERS, EVERY, STEPS }
+
+    static final double DEFAULT_TARGET_MS = 1000.0 / 60;
+    static final int MAX_RENDER_EVERY = 4;
+    static final int MAX_STEP_MULTIPLIER = 4;
+    private static final long EVALUATE_NANOS = 500_000_000L;
+    private static final long MIN_HOLD_NANOS = 1_000_000_000L;
+    private static final long MAX_HOLD_NANOS = 16_000_000_000L;
+    // over this much of the target a frame is late; under RELEASE_SHARE of it there is room to spare
+    private static final double OVER = 1.2;
+    private static final double RELEASE_SHARE = 0.5;
+    private static final double SIMULATION_BUSY = 0.6;
+
+    private final FrameMetrics metrics;
+    private final long targetNanos;
+    private final int maxWorkers;
+    private final boolean densityAllowed, stepsAllowed;
+    // pulled levers, newest last; a lever pulled twice is in here twice
+    private final List<Lever> pulled = new ArrayList<>();
+
+    private boolean density;
+    private int workers;
+    private int renderEvery = 1;
+    private int stepMultiplier = 1;
+
+    // phase totals as of the last evaluation
+    private long lastNanos, lastFrames, lastFrameNanos, lastSimulationNanos, lastRenderNanos, lastDroppedSteps;
+    private long heldUntil;
+    // how long to wait after a release; grows when releases don't stick
+    private long releaseHold = MIN_HOLD_NANOS;
+    private long lastReleaseNanos;
+
+    /**
+     * @param maxWorkers     physics workers available; 1 leaves the worker lever out
+     * @param densityAllowed whether the density lever may be used, i.e. level of detail is automatic
+     * @param stepsAllowed   whether step length may change; not while recording or replaying, which need fixed steps
+     */
+    FrameGovernor(FrameMetrics metrics, double targetMs, int maxWorkers, boolean densityAllowed, boolean stepsAllowed) {
+        this.metrics = metrics;
+        this.targetNanos = (long) (targetMs * 1e6);
+        this.maxWorkers = Math.max(1, maxWorkers);
+        this.workers = this.maxWorkers;
+        this.densityAllowed = densityAllowed;
+        this.stepsAllowed = stepsAllowed;
+        metrics.setGovernorState(state());
+    }
+
+    /** A governor as configured by -Drender.governor and -Drender.targetMs, or null if it is off. */
+    static FrameGovernor fromSystemProperties(FrameMetrics metrics, int maxWorkers, boolean densityAllowed,
+                                              boolean stepsAllowed) {
+        if (!Boolean.parseBoolean(System.getProperty("render.governor", "true"))) {
+            return null;
+        }
+        String target = System.getProperty("render.targetMs");
+        return new FrameGovernor(metrics, target == null ? DEFAULT_TARGET_MS : Double.parseDouble(target),
+                maxWorkers, densityAllowed, stepsAllowed);
+    }
+
+    boolean isDensity() {
+        return density;
+    }
+
+    int getWorkers() {
+        return workers;
+    }
+
+    /** Paint one frame out of this many. */
+    int getRenderEvery() {
+        return renderEvery;
+    }
+
+    int getStepMultiplier() {
+        return stepMultiplier;
+    }
+
+    /**
+     * Looks at the frames since the last evaluation, at most every half second,
+     * and moves a lever if needed.
+     *
+     * @return true if a setting changed and needs applying
+     */
+    boolean evaluate(long now) {
+        if (lastNanos == 0) {
+            remember(now);
+            return false;
+        }
+        if (now - lastNanos < EVALUATE_NANOS) {
+            return false;
+        }
+        long frames = metrics.getTotalCount(FrameMetrics.Phase.FRAME) - lastFrames;
+        long frameNanos = metrics.getTotalNanos(FrameMetrics.Phase.FRAME) - lastFrameNanos;
+        long simulationNanos = simulationNanos() - lastSimulationNanos;
+        long renderNanos = renderNanos() - lastRenderNanos;
+        long droppedSteps = metrics.getDroppedSteps() - lastDroppedSteps;
+        long elapsed = now - lastNanos;
+        remember(now);
+        if (frames == 0 || now < heldUntil) {
+            return false;
+        }
+        // painting every Nth frame stretches the interval on purpose
+        double interval = (double) frameNanos / frames / renderEvery;
+        double simulation = (double) simulationNanos / frames, render = (double) renderNanos / frames;
+        double busy = (double) simulationNanos / elapsed;
+        String measured = String.format(Locale.ROOT,
+                "interval %.1fms, simulation %.1fms (%.0f%% busy), drawing %.1fms per frame",
+                interval / 1e6, simulation / 1e6, busy * 100, render / 1e6);
+
+        // a simulation thread busy most of the time is what holds frames up, whatever the drawing costs
+        boolean simulationBound = droppedSteps > 0 || busy > SIMULATION_BUSY;
+        Lever lever = null;
+        boolean pull = false;
+        if (interval > targetNanos * OVER || droppedSteps > 0) {
+            lever = simulationBound ? simulationLever() : drawingLever();
+            pull = lever != null && !(simulationBound && lever == Lever.WORKERS);
+            if (pull && now - lastReleaseNanos < 3 * releaseHold) {
+                // the last release didn't hold; wait longer before the next one
+                releaseHold = Math.min(MAX_HOLD_NANOS, releaseHold * 2);
+            }
+        } else if (!pulled.isEmpty() && simulation + render < targetNanos * RELEASE_SHARE
+                && now - lastReleaseNanos >= releaseHold) {
+            lever = pulled.get(pulled.size() - 1);
+        }
+        if (lever == null) {
+            if (now - lastReleaseNanos > 4 * releaseHold) {
+                releaseHold = MIN_HOLD_NANOS;
+            }
+            return false;
+        }
+        if (pull) {
+            set(lever, true);
+            pulled.add(lever);
+        } else {
+            set(lever, false);
+            pulled.remove(pulled.lastIndexOf(lever));
+            lastReleaseNanos = now;
+        }
+        heldUntil = now + MIN_HOLD_NANOS;
+        metrics.governorDecided((pull ? "+" : "-") + lever.name().toLowerCase(Locale.ROOT) + " (" + measured + ")",
+                state());
+        return true;
+    }
+
+    /** The governor's settings, e.g. {@code density workers=2/4 every=1 steps=1}. */
+    String state() {
+        return (density ? "density " : "")
+                + "workers=" + workers + "/" + maxWorkers + " every=" + renderEvery + " steps=" + stepMultiplier;
+    }
+
+    /** Next lever for frames the drawing makes late, or null if all are pulled. */
+    private Lever drawingLever() {
+        if (densityAllowed && !density) {
+            return Lever.DENSITY;
+        }
+        if (workers > 1) {
+            return Lever.WORKERS;
+        }
+        return renderEvery < MAX_RENDER_EVERY ? Lever.EVERY : null;
+    }
+
+    /** Next lever for frames the simulation makes late: workers taken by the drawing come back first. */
+    private Lever simulationLever() {
+        if (pulled.contains(Lever.WORKERS)) {
+            return Lever.WORKERS;
+        }
+        return stepsAllowed && stepMultiplier < MAX_STEP_MULTIPLIER ? Lever.STEPS : null;
+    }
+
+    private void set(Lever lever, boolean pull) {
+        switch (lever) {
+            case DENSITY:
+                density = pull;
+                break;
+            case WORKERS:
+                workers = pull ? Math.max(1, workers / 2) : Math.min(maxWorkers, workers * 2);
+                break;
+            case EVERY:
+                renderEvery += pull ? 1 : -1;
+                break;
+            case STEPS:
+                stepMultiplier += pull ? 1 : -1;
+                break;
+        }
+    }
+
+    private long simulationNanos() {
+        return metrics.getTotalNanos(FrameMetrics.Phase.STEP) + metrics.getTotalNanos(FrameMetrics.Phase.INDEX)
+                + metrics.getTotalNanos(FrameMetrics.Phase.AGENTS);
+    }
+
+    private long renderNanos() {
+        return metrics.getTotalNanos(FrameMetrics.Phase.QUERY) + metrics.getTotalNanos(FrameMetrics.Phase.RASTER)
+                + metrics.getTotalNanos(FrameMetrics.Phase.BLIT);
+    }
+
+    private void remember(long now) {
+        lastNanos = now;
+        lastFrames = metrics.getTotalCount(FrameMetrics.Phase.FRAME);
+        lastFrameNanos = metrics.getTotalNanos(FrameMetrics.Phase.FRAME);
+        lastSimulationNanos = simulationNanos();
+        lastRenderNanos = renderNanos();
+        lastDroppedSteps = metrics.getDroppedSteps();
+    }
+}
@@ -0,0 +1,230 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-phase timings and counters for one simulator instance. The simulation
+ * thread records the step, the snapshot/index build and the agent queries; the EDT records the
+ * periphery query, rasterization, blit and the interval between painted frames.
+ * Recording never blocks or allocates.
+ *
+ * {@link #roll} closes the current interval and turns the raw counts into the
+ * statistics returned by the getters; {@link MetricsReporter} calls it on a
+ * fixed period and exposes the result through JMX, a CSV file or the log.
+ */
+class FrameMetrics {
+
+    enum Phase {
+        /** Physics and collisions for one tick, including draining commands. */
+        STEP,
+        /** Filling the snapshot, which also builds its spatial index; includes closed-form evaluation in ANALYTIC mode. */
+        INDEX,
+        /** Finding the particles inside the explorer periphery. */
+        QUERY,
+        /** Answering every explorer agent's periphery query at once, on the simulation thread. */
+        AGENTS,
+        /** Clearing and drawing the offscreen frame. */
+        RASTER,
+        /** Copying the offscreen frame to the screen. */
+        BLIT,
+        /** Time between consecutive painted frames. */
+        FRAME;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[PHASES.length];
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong droppedSteps = new AtomicLong();
+    private volatile int particleCount;
+    private volatile int agentCount;
+    private final AtomicLong agentQueries = new AtomicLong();
+    private final AtomicLong agentQueryNanos = new AtomicLong();
+
+    // reader side, replaced wholesale on every roll
+    private volatile LatencyHistogram.Stats[] stats = new LatencyHistogram.Stats[PHASES.length];
+    private volatile double framesPerSecond;
+    private volatile double allocatedBytesPerSecond = -1;
+    private volatile double agentQueriesPerSecond;
+    private final AtomicLong governorDecisions = new AtomicLong();
+    private volatile String governorState = "off";
+    private volatile String governorDecision = "";
+    private long lastRollNanos = System.nanoTime();
+    private long lastAllocatedBytes = allocatedBytes();
+
+    FrameMetrics() {
+        for (int i = 0; i < PHASES.length; i++) {
+            histograms[i] = new LatencyHistogram();
+            stats[i] = LatencyHistogram.Stats.EMPTY;
+        }
+    }
+
+    void record(Phase phase, long nanos) {
+        histograms[phase.ordinal()].record(nanos);
+    }
+
+    /** A published frame was replaced before anything painted it. */
+    void frameDropped() {
+        droppedFrames.incrementAndGet();
+    }
+
+    /** The simulation fell behind real time and discarded {@code steps} steps. */
+    void stepsDropped(long steps) {
+        droppedSteps.addAndGet(steps);
+    }
+
+    void setParticleCount(int particleCount) {
+        this.particleCount = particleCount;
+    }
+
+    int getParticleCount() {
+        return particleCount;
+    }
+
+    /** {@code agents} periphery queries were answered in {@code nanos}. */
+    void agentsQueried(int agents, long nanos) {
+        record(Phase.AGENTS, nanos);
+        agentCount = agents;
+        agentQueries.addAndGet(agents);
+        agentQueryNanos.addAndGet(nanos);
+    }
+
+    int getAgentCount() {
+        return agentCount;
+    }
+
+    /** Agent periphery queries answered per second of query time over the last interval, 0 without agents. */
+    double getAgentQueriesPerSecond() {
+        return agentQueriesPerSecond;
+    }
+
+    long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    long getDroppedSteps() {
+        return droppedSteps.get();
+    }
+
+    /** Frames painted since startup; cheap enough to poll from a UI timer. */
+    long getFramesPainted() {
+        return histograms[Phase.FRAME.ordinal()].totalCount();
+    }
+
+    /** Time recorded for {@code phase} since startup, for readers that keep their own intervals. */
+    long getTotalNanos(Phase phase) {
+        return histograms[phase.ordinal()].totalNanos();
+    }
+
+    /** Number of times {@code phase} was recorded since startup. */
+    long getTotalCount(Phase phase) {
+        return histograms[phase.ordinal()].totalCount();
+    }
+
+    /** The {@link FrameGovernor} moved a lever; {@code state} is its settings afterwards. */
+    void governorDecided(String decision, String state) {
+        governorDecision = decision;
+        governorState = state;
+        governorDecisions.incrementAndGet();
+    }
+
+    void setGovernorState(String state) {
+        governorState = state;
+    }
+
+    /** The governor's current settings, or "off". */
+    String getGovernorState() {
+        return governorState;
+    }
+
+    /** The governor's most recent decision and the measurements behind it. */
+    String getGovernorDecision() {
+        return governorDecision;
+    }
+
+    long getGovernorDecisions() {
+        return governorDecisions.get();
+    }
+
+    /** Statistics of {@code phase} over the last completed interval. */
+    LatencyHistogram.Stats getStats(Phase phase) {
+        return stats[phase.ordinal()];
+    }
+
+    double getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    /** Allocation rate over the last interval across all threads, or -1 if the JVM can't tell. */
+    double getAllocatedBytesPerSecond() {
+        return allocatedBytesPerSecond;
+    }
+
+    /** Closes the current interval. Only one thread may call this. */
+    void roll() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - lastRollNanos) / 1e9);
+        LatencyHistogram.Stats[] next = new LatencyHistogram.Stats[PHASES.length];
+        for (int i = 0; i < PHASES.length; i++) {
+            next[i] = histograms[i].roll();
+        }
+        long allocated = allocatedBytes();
+        // threads that died since the last roll take their counts with them, hence the clamp
+        allocatedBytesPerSecond = allocated < 0 || lastAllocatedBytes < 0
+                ? -1 : Math.max(0, allocated - lastAllocatedBytes) / seconds;
+        framesPerSecond = next[Phase.FRAME.ordinal()].count / seconds;
+        long queries = agentQueries.getAndSet(0), queryNanos = agentQueryNanos.getAndSet(0);
+        agentQueriesPerSecond = queryNanos == 0 ? 0 : queries * 1e9 / queryNanos;
+        lastAllocatedBytes = allocated;
+        lastRollNanos = now;
+        stats = next;
+    }
+
+    /** Collections so far, summed over all collectors. */
+    static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    /** Milliseconds spent collecting so far, summed over all collectors. */
+    static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    /** Bytes of heap in use, live or not yet collected. */
+    static long heapUsedBytes() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /** Bytes allocated so far by all live threads, or -1 if the JVM can't tell. */
+    static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+        if (!sunThreads.isThreadAllocatedMemorySupported() || !sunThreads.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : sunThreads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,22 @@
+/** JMX view of {@link FrameMetrics}; rates cover the last reporting interval. */
+public interface FrameMetricsMBean {
+    int getParticleCount();
+
+    double getFramesPerSecond();
+
+    double getAllocatedBytesPerSecond();
+
+    long getDroppedFrames();
+
+    long getDroppedSteps();
+
+    int getAgentCount();
+
+    double getAgentQueriesPerSecond();
+
+    String getGovernorState();
+
+    String getGovernorDecision();
+
+    long getGovernorDecisions();
+}
@@ -0,0 +1,54 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Positions and view state captured at the end of a simulation tick. Instances are
+ * recycled by {@link SnapshotBuffer}; a reader owns the one it acquired until it
+ * acquires the next.
+ *
+ * Positions are stored in {@link #grid} cell order, so region queries only touch
+ * the cells they overlap.
+ */
+class FrameSnapshot {
+    // at most this many grid cells along either axis, so huge worlds keep a small index
+    private static final int MAX_GRID_SIDE = 1024;
+
+    float[] x = new float[0];
+    float[] y = new float[0];
+    // cells the size of the explorer periphery, coarser in worlds too large for that
+    final SpatialGrid grid = new SpatialGrid(Simulation.WIDTH, Simulation.HEIGHT,
+            Math.max(Simulation.PERIPHERY_WIDTH, Simulation.WIDTH / (double) MAX_GRID_SIDE),
+            Math.max(Simulation.PERIPHERY_HEIGHT, Simulation.HEIGHT / (double) MAX_GRID_SIDE));
+    int count;
+    boolean explorerMode;
+    boolean explorerSpawned;
+    double spriteX, spriteY;
+    double simTime;
+    long tick;
+    // explorer agents (see ExplorerAgents) and how many particles each saw; agentCount is 0 without any
+    float[] agentX = new float[0];
+    float[] agentY = new float[0];
+    int[] agentVisible = new int[0];
+    int agentCount;
+
+    void ensureCapacity(int capacity) {
+        if (x.length < capacity) {
+            int newCapacity = Math.max(capacity, x.length + (x.length >> 1));
+            x = Arrays.copyOf(x, newCapacity);
+            y = Arrays.copyOf(y, newCapacity);
+        }
+    }
+
+    void ensureAgentCapacity(int capacity) {
+        if (agentX.length < capacity) {
+            agentX = new float[capacity];
+            agentY = new float[capacity];
+            agentVisible = new int[capacity];
+        }
+    }
+
+    /** Visits every particle in cells overlapping the rectangle; callers still test exact bounds. */
+    void forEachInRect(double minX, double minY, double maxX, double maxY, IntConsumer visitor) {
+        grid.forEachInRect(minX, minY, maxX, maxY, visitor);
+    }
+}
@@ -0,0 +1,446 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.LongConsumer;
+
+/**
+ * Runs the simulator core without a window and prints one JSON line of timings.
+ * Nothing here touches AWT beyond {@link java.awt.image.BufferedImage}, which
+ * works in headless mode.
+ *
+ * Arguments are key=value pairs, e.g.
+ * {@code java HeadlessBenchmark particles=1000000 scene=angle ticks=600 render=developer}
+ *
+ *   particles  number of particles to spawn (default 100000)
+ *   scene      distance | angle | velocity, matching the three input dialogs (default distance)
+ *   ticks      measured ticks (default 600)
+ *   warmup     unmeasured ticks before measuring (default 120)
+ *   render     none | developer | explorer | density, offscreen raster pass per tick (default none);
+ *              density draws developer mode as the level-of-detail heatmap
+ *   workers    physics worker threads (default: -Dsim.workers or all cores)
+ *   kernel     auto | scalar | vector, physics step kernel (default: -Dsim.kernel or auto);
+ *              vector needs --add-modules jdk.incubator.vector
+ *   dt         simulated seconds per tick (default 0.05)
+ *   motion     integrated | analytic (default integrated)
+ *   collisions true | false, particle-particle collisions (default false)
+ *   seed       spawn seed, for reproducible scenes (default random)
+ *   share      a SharedFrameRing file to publish every tick to, for SharedFrameViewer (default none)
+ *   camera     fit | left,top,zoom, the part of the world developer and density render
+ *              (default the top left corner at zoom 1; see -Dworld.width/-Dworld.height)
+ *   spawn      serial | bulk, spawn on the simulation thread or through BulkSpawner (default serial)
+ *   lifetime   seconds a particle lives before it is removed (default 0, forever)
+ *   agents     autonomous explorers, each querying its periphery every tick (default 0)
+ *   agentBehaviour  wander | patrol (default wander)
+ *   agentQuery batched | each, all agents in one pass or one query per agent (default batched)
+ *   agentsOut  a CSV file to write each agent's position and visible count to at the end (default none)
+ *   governor   true lets a FrameGovernor trade quality for frame time, logging each decision to stderr (default false);
+ *              heatmapFrames in the output counts the frames painted as a heatmap
+ *   targetMs   the governor's target frame time (default 16.7)
+ *   storage    heap | offheap | offheap32, where the simulation keeps its particles (default: -Dsim.storage
+ *              or heap); the off-heap stores keep doubles or floats outside the heap and refuse kernel,
+ *              analytic motion, collisions, lifetimes and agents (see {@link Simulation})
+ *   check      N steps the scene in heap, offheap and offheap32 stores side by side instead of
+ *              benchmarking, and fails unless they agree (see {@link #checkStorage})
+ */
+class HeadlessBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        Map<String, String> options = parseArgs(args);
+        if (options.containsKey("check")) {
+            checkStorage(options);
+            return;
+        }
+        ParallelStepper stepper = options.containsKey("workers")
+                ? new ParallelStepper(Integer.parseInt(options.get("workers")),
+                        ParallelStepper.DEFAULT_CHUNK_SIZE, ParallelStepper.DEFAULT_SEQUENTIAL_THRESHOLD)
+                : ParallelStepper.fromSystemProperties();
+        OffHeapParticles.Layout storage = Simulation.storageFor(
+                options.getOrDefault("storage", System.getProperty("sim.storage", "heap")));
+        if (storage == null) {
+            stepper.setKernel(StepKernel.forName(
+                    options.getOrDefault("kernel", System.getProperty("sim.kernel", "auto"))));
+        } else if (options.containsKey("kernel")) {
+            throw new IllegalArgumentException("kernel= needs storage=heap");
+        }
+        run(options, stepper, storage);
+    }
+
+    /** The run's options, and what its measured ticks took. */
+    private static final class Run {
+        final int particles, ticks, warmup;
+        final String scene, render;
+        final double deltaTime;
+        final long[] tickNanos;
+        long spawnNanos, elapsedNanos, allocatedBytes, gcCount, gcMillis, heapUsedBytes;
+
+        Run(Map<String, String> options) {
+            particles = Integer.parseInt(options.getOrDefault("particles", "100000"));
+            scene = options.getOrDefault("scene", "distance");
+            ticks = Integer.parseInt(options.getOrDefault("ticks", "600"));
+            warmup = Integer.parseInt(options.getOrDefault("warmup", "120"));
+            render = options.getOrDefault("render", "none");
+            deltaTime = Double.parseDouble(options.getOrDefault("dt", "0.05"));
+            tickNanos = new long[ticks];
+        }
+
+        /**
+         * Runs the warmup ticks, then {@code measuring}, then the measured ticks,
+         * timing each one and the memory and GC activity over all of them.
+         * {@code tick} gets the tick number, warmup included.
+         */
+        void measure(LongConsumer tick, Runnable measuring) {
+            for (int i = 0; i < warmup; i++) {
+                tick.accept(i);
+            }
+            measuring.run();
+            long allocatedBefore = FrameMetrics.allocatedBytes();
+            long gcCountBefore = FrameMetrics.gcCount(), gcMillisBefore = FrameMetrics.gcMillis();
+            long start = System.nanoTime();
+            for (int i = 0; i < ticks; i++) {
+                long t0 = System.nanoTime();
+                tick.accept(warmup + i);
+                tickNanos[i] = System.nanoTime() - t0;
+            }
+            elapsedNanos = System.nanoTime() - start;
+            allocatedBytes = allocatedBefore < 0 ? -1 : FrameMetrics.allocatedBytes() - allocatedBefore;
+            gcCount = FrameMetrics.gcCount() - gcCountBefore;
+            gcMillis = FrameMetrics.gcMillis() - gcMillisBefore;
+            heapUsedBytes = FrameMetrics.heapUsedBytes();
+            Arrays.sort(tickNanos);
+        }
+
+        /** Starts the JSON line with the timing fields, for {@code n} particles at the end. */
+        StringBuilder report(String storage, String kernel, int n, int workers) {
+            double seconds = elapsedNanos / 1e9;
+            StringBuilder json = new StringBuilder("{");
+            field(json, "scene", '"' + scene + '"');
+            field(json, "render", '"' + render + '"');
+            field(json, "storage", '"' + storage + '"');
+            field(json, "kernel", '"' + kernel + '"');
+            field(json, "particles", n);
+            field(json, "workers", workers);
+            field(json, "world", '"' + (Simulation.WIDTH + "x" + Simulation.HEIGHT) + '"');
+            field(json, "ticks", ticks);
+            field(json, "spawnMs", spawnNanos / 1e6);
+            field(json, "ticksPerSec", ticks / seconds);
+            field(json, "nsPerParticleStep", n == 0 ? 0 : (double) elapsedNanos / ((long) ticks * n));
+            field(json, "allocBytesPerSec", allocatedBytes < 0 ? -1 : allocatedBytes / seconds);
+            field(json, "tickP50Ms", percentile(tickNanos, 0.50) / 1e6);
+            field(json, "tickP90Ms", percentile(tickNanos, 0.90) / 1e6);
+            field(json, "tickP99Ms", percentile(tickNanos, 0.99) / 1e6);
+            field(json, "tickMaxMs", ticks == 0 ? 0 : tickNanos[ticks - 1] / 1e6);
+            field(json, "heapUsedMb", heapUsedBytes / 1e6);
+            field(json, "gcCount", gcCount);
+            field(json, "gcMs", gcMillis);
+            return json;
+        }
+    }
+
+    private static void run(Map<String, String> options, ParallelStepper stepper, OffHeapParticles.Layout storage)
+            throws IOException {
+        Run run = new Run(options);
+        String render = run.render;
+        Simulation simulation = new Simulation(stepper, storage);
+        simulation.setMotionMode(Simulation.MotionMode.valueOf(
+                options.getOrDefault("motion", "integrated").toUpperCase(Locale.ROOT)));
+        simulation.setCollisionsEnabled(Boolean.parseBoolean(options.getOrDefault("collisions", "false")));
+        simulation.setLifetime(Double.parseDouble(options.getOrDefault("lifetime", "0")));
+        Long seed = options.containsKey("seed") ? Long.valueOf(options.get("seed")) : null;
+        if (seed != null) {
+            simulation.setSeed(seed);
+        }
+        if (options.containsKey("share")) {
+            simulation.setSharedFrames(SharedFrameRing.create(Path.of(options.get("share")), SharedFrameRing.DEFAULT_SLOTS,
+                    Math.max(run.particles, SharedFrameRing.DEFAULT_CAPACITY)));
+        }
+        long spawnStart = System.nanoTime();
+        if (options.getOrDefault("spawn", "serial").equals("bulk")) {
+            BulkSpawner spawner = new BulkSpawner(simulation, Runtime.getRuntime().availableProcessors(), seed);
+            spawner.spawn(sceneDistribution(run.scene), run.particles, null).join();
+            spawner.shutdown();
+            simulation.drainCommands();
+        } else {
+            simulation.spawn(sceneDistribution(run.scene), run.particles);
+        }
+        run.spawnNanos = System.nanoTime() - spawnStart;
+        if (render.equals("explorer")) {
+            simulation.setExplorerMode(true);
+        }
+        int agentCount = Integer.parseInt(options.getOrDefault("agents", "0"));
+        simulation.setAgents(agentCount, ExplorerAgents.behaviourFor(options.getOrDefault("agentBehaviour", "wander")));
+        ExplorerAgents agents = simulation.getAgents();
+        if (agents != null) {
+            agents.setBatched(options.getOrDefault("agentQuery", "batched").equals("batched"));
+        }
+
+        RasterRenderer renderer = render.equals("none")
+                ? null : new RasterRenderer(Viewport.SCREEN_WIDTH, Viewport.SCREEN_HEIGHT, 10, stepper);
+        DensityRenderer density = render.equals("density")
+                ? new DensityRenderer(Viewport.SCREEN_WIDTH, Viewport.SCREEN_HEIGHT, stepper) : null;
+        Viewport view = Viewport.parse(options.get("camera"), Viewport.SCREEN_WIDTH, Viewport.SCREEN_HEIGHT);
+        FrameMetrics metrics = simulation.getMetrics();
+        LongConsumer tick;
+        FrameGovernor governor = null;
+        // measured frames painted as a heatmap
+        long[] heatmapFrames = new long[1];
+        if (Boolean.parseBoolean(options.getOrDefault("governor", "false"))) {
+            // physics and drawing take turns on this thread, so fewer physics workers would free nothing
+            FrameGovernor governed = new FrameGovernor(metrics,
+                    Double.parseDouble(options.getOrDefault("targetMs", String.valueOf(FrameGovernor.DEFAULT_TARGET_MS))),
+                    1, render.equals("developer"), true);
+            // the heatmap the governor may switch developer dots to
+            DensityRenderer heatmap = render.equals("developer")
+                    ? new DensityRenderer(Viewport.SCREEN_WIDTH, Viewport.SCREEN_HEIGHT, stepper) : null;
+            long[] lastPaint = new long[1];
+            tick = i -> {
+                boolean painted = runGovernedTick(simulation, renderer, density, heatmap, view, run.deltaTime,
+                        governed, i, lastPaint);
+                if (painted && i >= run.warmup) {
+                    heatmapFrames[0]++;
+                }
+            };
+            governor = governed;
+        } else {
+            tick = i -> runTick(simulation, renderer, density, view, run.deltaTime);
+        }
+        run.measure(tick, metrics::roll);
+        metrics.roll();
+
+        OffHeapParticles offHeap = simulation.getOffHeapParticles();
+        StringBuilder json = run.report(offHeap == null ? "heap" : options.get("storage"),
+                offHeap == null ? stepper.getKernel().name() : StepKernel.SCALAR.name(), simulation.particleCount(),
+                stepper.getWorkers());
+        field(json, "motion", '"' + simulation.getMotionMode().name().toLowerCase(Locale.ROOT) + '"');
+        field(json, "collisions", simulation.isCollisionsEnabled());
+        field(json, "shards", simulation.getShards() == null ? 1 : simulation.getShards().getCount());
+        if (offHeap != null) {
+            field(json, "layout", '"' + offHeap.getLayout().name() + '"');
+            field(json, "offHeapMb", offHeap.bytes() / 1e6);
+            field(json, "offHeapMemory", '"' + offHeap.getMemoryName() + '"');
+        }
+        if (governor != null) {
+            field(json, "governor", '"' + metrics.getGovernorState() + '"');
+            field(json, "governorDecisions", metrics.getGovernorDecisions());
+            field(json, "framesPainted", metrics.getStats(FrameMetrics.Phase.FRAME).count);
+            field(json, "heatmapFrames", heatmapFrames[0]);
+        }
+        if (agents != null) {
+            int[] visible = new int[agentCount];
+            for (int a = 0; a < agentCount; a++) {
+                visible[a] = agents.getVisible(a);
+            }
+            Arrays.sort(visible);
+            field(json, "agents", agentCount);
+            field(json, "agentQuery", agents.isBatched() ? "\"batched\"" : "\"each\"");
+            field(json, "agentQueriesPerSec", metrics.getAgentQueriesPerSecond());
+            field(json, "agentQueryP50Ms", metrics.getStats(FrameMetrics.Phase.AGENTS).p50 / 1e6);
+            field(json, "agentVisibleMean", (double) agents.getVisibleTotal() / agentCount);
+            field(json, "agentVisibleP50", visible[agentCount / 2]);
+            field(json, "agentVisibleMax", visible[agentCount - 1]);
+            if (options.containsKey("agentsOut")) {
+                writeAgents(agents, Path.of(options.get("agentsOut")));
+            }
+        }
+        simulation.shutdown();
+        print(json);
+    }
+
+    /**
+     * Steps the scene in a heap store and in F64 and F32 off-heap stores side by
+     * side, {@code check} times, and fails unless F64 matches the heap store exactly
+     * and F32 matches it with every value rounded to a float after each step.
+     * Uses at most 100000 of {@code particles}.
+     */
+    private static void checkStorage(Map<String, String> options) {
+        int steps = Integer.parseInt(options.get("check"));
+        int n = Math.min(100_000, Integer.parseInt(options.getOrDefault("particles", "100000")));
+        double deltaTime = Double.parseDouble(options.getOrDefault("dt", "0.05"));
+        long seed = options.containsKey("seed") ? Long.parseLong(options.get("seed"))
+                : new SplittableRandom().nextLong();
+        SpawnDistribution distribution = sceneDistribution(options.getOrDefault("scene", "distance"));
+        ParticleStore heap = new ParticleStore(n), rounded = new ParticleStore(n);
+        heap.fill(distribution, new SplittableRandom(seed), n);
+        rounded.fill(distribution, new SplittableRandom(seed), n);
+        roundToFloats(rounded);
+        ParticleStore read = new ParticleStore(n);
+        try (OffHeapParticles f64 = new OffHeapParticles(OffHeapParticles.Layout.F64, n);
+             OffHeapParticles f32 = new OffHeapParticles(OffHeapParticles.Layout.F32, n)) {
+            f64.fill(distribution, new SplittableRandom(seed), n);
+            f32.fill(distribution, new SplittableRandom(seed), n);
+            for (int s = 0; s < steps; s++) {
+                heap.step(deltaTime);
+                rounded.step(deltaTime);
+                roundToFloats(rounded);
+                f64.step(deltaTime);
+                f32.step(deltaTime);
+            }
+            f64.copyTo(read);
+            checkEqual("F64", heap, read);
+            f32.copyTo(read);
+            checkEqual("F32", rounded, read);
+        }
+        double drift = 0;
+        for (int i = 0; i < n; i++) {
+            drift = Math.max(drift, Math.max(Math.abs(read.x[i] - heap.x[i]), Math.abs(read.y[i] - heap.y[i])));
+        }
+
+        StringBuilder json = new StringBuilder("{");
+        field(json, "check", "\"ok\"");
+        field(json, "particles", n);
+        field(json, "steps", steps);
+        field(json, "seed", seed);
+        field(json, "f32MaxDriftFromHeap", drift);
+        print(json);
+    }
+
+    private static void roundToFloats(ParticleStore store) {
+        for (int i = 0; i < store.size(); i++) {
+            store.x[i] = (float) store.x[i];
+            store.y[i] = (float) store.y[i];
+            store.vx[i] = (float) store.vx[i];
+            store.vy[i] = (float) store.vy[i];
+        }
+    }
+
+    private static void checkEqual(String layout, ParticleStore expected, ParticleStore actual) {
+        for (int i = 0; i < expected.size(); i++) {
+            if (expected.x[i] != actual.x[i] || expected.y[i] != actual.y[i]
+                    || expected.vx[i] != actual.vx[i] || expected.vy[i] != actual.vy[i]) {
+                throw new IllegalStateException(layout + " store disagrees with the heap store at particle " + i
+                        + ": " + actual.x[i] + "," + actual.y[i]
+                        + " instead of " + expected.x[i] + "," + expected.y[i]);
+            }
+        }
+    }
+
+    private static void print(StringBuilder json) {
+        json.setLength(json.length() - 1);
+        System.out.println(json.append('}'));
+    }
+
+    private static void writeAgents(ExplorerAgents agents, Path path) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write("agent,x,y,visible");
+            out.newLine();
+            for (int a = 0; a < agents.getCount(); a++) {
+                out.write(a + "," + agents.getX(a) + "," + agents.getY(a) + "," + agents.getVisible(a));
+                out.newLine();
+            }
+        }
+    }
+
+    static SpawnDistribution sceneDistribution(String scene) {
+        switch (scene) {
+            case "distance":
+                return SpawnDistribution.byDistance(0, 0, Simulation.WIDTH, Simulation.HEIGHT, 45, 100);
+            case "angle":
+                return SpawnDistribution.byAngle(Simulation.WIDTH / 2.0, Simulation.HEIGHT / 2.0, 100, 0, 360);
+            case "velocity":
+                return SpawnDistribution.byVelocity(Simulation.WIDTH / 2.0, Simulation.HEIGHT / 2.0, 30, 10, 200);
+            default:
+                throw new IllegalArgumentException("Unknown scene: " + scene);
+        }
+    }
+
+    /** One tick plus, unless {@code renderer} is null, an offscreen frame; {@code density} may be null. */
+    static void runTick(Simulation simulation, RasterRenderer renderer, DensityRenderer density, Viewport view,
+                        double deltaTime) {
+        simulation.tick(deltaTime);
+        if (renderer == null) {
+            return;
+        }
+        FrameSnapshot frame = simulation.acquireFrame();
+        if (frame.explorerMode) {
+            renderer.clear(0);
+            renderer.drawExplorerView(frame, RasterRenderer.PARTICLE_COLOR);
+        } else if (density != null) {
+            density.draw(frame, view, renderer.getPixels());
+        } else {
+            renderer.drawDeveloperView(frame, view, 0, RasterRenderer.PARTICLE_COLOR);
+        }
+    }
+
+    /**
+     * One tick with the governor's levers applied: a step of its multiplier's
+     * length every that many ticks, painting every Nth tick, and {@code heatmap}
+     * in place of dots. {@code density}, if not null, is always drawn instead.
+     * {@code lastPaint} holds the time of the last painted tick.
+     *
+     * @return true if a heatmap was painted
+     */
+    private static boolean runGovernedTick(Simulation simulation, RasterRenderer renderer, DensityRenderer density,
+                                           DensityRenderer heatmap, Viewport view, double deltaTime,
+                                           FrameGovernor governor, long tick, long[] lastPaint) {
+        boolean painted = false;
+        FrameMetrics metrics = simulation.getMetrics();
+        int multiplier = governor.getStepMultiplier();
+        if (tick % multiplier == 0) {
+            simulation.tick(deltaTime * multiplier);
+        }
+        if (tick % governor.getRenderEvery() == 0) {
+            long start = System.nanoTime();
+            if (renderer != null) {
+                FrameSnapshot frame = simulation.acquireFrame();
+                if (frame.explorerMode) {
+                    renderer.clear(0);
+                    renderer.drawExplorerView(frame, RasterRenderer.PARTICLE_COLOR);
+                } else if (density != null) {
+                    density.draw(frame, view, renderer.getPixels());
+                    painted = true;
+                } else if (heatmap != null && governor.isDensity()) {
+                    heatmap.draw(frame, view, renderer.getPixels());
+                    painted = true;
+                } else {
+                    renderer.drawDeveloperView(frame, view, 0, RasterRenderer.PARTICLE_COLOR);
+                }
+                metrics.record(FrameMetrics.Phase.RASTER, System.nanoTime() - start);
+            }
+            if (lastPaint[0] != 0) {
+                metrics.record(FrameMetrics.Phase.FRAME, start - lastPaint[0]);
+            }
+            lastPaint[0] = start;
+        }
+        if (governor.evaluate(System.nanoTime())) {
+            System.err.println("governor " + metrics.getGovernorDecision() + " -> " + metrics.getGovernorState());
+        }
+        return painted;
+    }
+
+    static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got: " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    static void field(StringBuilder json, String name, Object value) {
+        json.append('"').append(name).append("\":");
+        if (value instanceof Double) {
+            json.append(String.format(Locale.ROOT, "%.3f", (Double) value));
+        } else {
+            json.append(value);
+        }
+        json.append(',');
+    }
+}
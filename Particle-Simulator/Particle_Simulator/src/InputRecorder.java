@@ -0,0 +1,95 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Logs every recordable {@link SimulationCommand} together with the tick it was
+ * applied on, so {@link InputReplay} can feed the same commands to a fresh
+ * simulation at the same ticks. Spawns are logged as their distribution and job
+ * seed rather than as particles, which keeps a recording a few kilobytes however
+ * many particles it creates.
+ *
+ * Plain text, one entry per line:
+ * <pre>
+ *   psim-recording 1
+ *   seed 42
+ *   dt 0.05
+ *   motion integrated
+ *   collisions false
+ *   120 spawn 0 100000 -4473289127894 angle 640.0 360.0 100.0 0.0 360.0
+ *   121 batch 0 0
+ *   300 mode explorer
+ *   305 move 5 0
+ *   end 900
+ * </pre>
+ * Only the simulation thread writes, apart from {@link #close}.
+ */
+class InputRecorder {
+    static final String FORMAT = "psim-recording 1";
+
+    private final Path path;
+    private final BufferedWriter out;
+    private boolean failed;
+    private boolean closed;
+
+    InputRecorder(Path path, long seed, double deltaTime, Simulation simulation) throws IOException {
+        this.path = path;
+        this.out = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        out.write(FORMAT);
+        out.newLine();
+        out.write("seed " + seed);
+        out.newLine();
+        out.write("dt " + deltaTime);
+        out.newLine();
+        out.write("motion " + simulation.getMotionMode().name().toLowerCase(Locale.ROOT));
+        out.newLine();
+        out.write("collisions " + simulation.isCollisionsEnabled());
+        out.newLine();
+    }
+
+    static Path pathFromSystemProperties() {
+        String path = System.getProperty("sim.record");
+        return path == null ? null : Path.of(path);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    synchronized void record(long tick, SimulationCommand command) {
+        String line = command.record();
+        if (line == null || failed || closed) {
+            return;
+        }
+        try {
+            out.write(Long.toString(tick));
+            out.write(' ');
+            out.write(line);
+            out.newLine();
+        } catch (IOException e) {
+            // a broken log must not take the simulation down with it
+            failed = true;
+            e.printStackTrace();
+        }
+    }
+
+    /** Writes the end marker, unless {@code endTick} is negative, and closes the file. */
+    synchronized void close(long endTick) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (!failed && endTick >= 0) {
+                out.write("end " + endTick);
+                out.newLine();
+            }
+            out.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
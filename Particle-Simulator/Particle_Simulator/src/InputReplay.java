@@ -0,0 +1,296 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Plays an {@link InputRecorder} log back into a {@link Simulation}. The
+ * simulation calls {@link #feed} at the start of every step, which submits the
+ * commands recorded for that tick, so they are applied on exactly the ticks they
+ * were recorded on. Bulk spawn batches are regenerated from their job seed in
+ * the background as soon as the spawn is announced, and are normally ready by
+ * the tick that inserts them.
+ *
+ * Headless: {@code java InputReplay recording.txt render=raster workers=4}
+ * steps as fast as possible and prints one JSON line of per-tick timings. In the
+ * window (-Dsim.replay=recording.txt) the same summary is printed once the
+ * recording has run out, measured as the interval between published frames.
+ *
+ * Replay reproduces the recorded particles exactly. With collisions on, results
+ * also depend on the worker count, since that sets the collision stripe layout.
+ */
+class InputReplay {
+    private static final class Event {
+        final long tick;
+        // null for batch events, which are resolved when fed
+        final SimulationCommand command;
+        final int job, index;
+
+        Event(long tick, SimulationCommand command, int job, int index) {
+            this.tick = tick;
+            this.command = command;
+            this.job = job;
+            this.index = index;
+        }
+    }
+
+    private final Path path;
+    private final long seed;
+    private final double deltaTime;
+    private final Simulation.MotionMode motionMode;
+    private final boolean collisions;
+    private final List<Event> events;
+    private final long endTick;
+    private final Map<Integer, List<CompletableFuture<ParticleStore>>> pendingBatches = new HashMap<>();
+    private int next;
+
+    private long[] frameNanos = new long[1024];
+    private int frames;
+    private long lastFrame;
+    private boolean reported;
+
+    private InputReplay(Path path, long seed, double deltaTime, Simulation.MotionMode motionMode,
+                        boolean collisions, List<Event> events, long endTick) {
+        this.path = path;
+        this.seed = seed;
+        this.deltaTime = deltaTime;
+        this.motionMode = motionMode;
+        this.collisions = collisions;
+        this.events = events;
+        this.endTick = endTick;
+    }
+
+    static Path pathFromSystemProperties() {
+        String path = System.getProperty("sim.replay");
+        return path == null ? null : Path.of(path);
+    }
+
+    static InputReplay load(Path path) throws IOException {
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(InputRecorder.FORMAT)) {
+            throw new IOException("Not a recording: " + path);
+        }
+        long seed = 0;
+        double deltaTime = 0.05;
+        Simulation.MotionMode motionMode = Simulation.MotionMode.INTEGRATED;
+        boolean collisions = false;
+        Long endTick = null;
+        List<Event> events = new ArrayList<>();
+        for (int i = 1; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] t = line.split(" ", 3);
+            try {
+                switch (t[0]) {
+                    case "seed":
+                        seed = Long.parseLong(t[1]);
+                        break;
+                    case "dt":
+                        deltaTime = Double.parseDouble(t[1]);
+                        break;
+                    case "motion":
+                        motionMode = Simulation.MotionMode.valueOf(t[1].toUpperCase(Locale.ROOT));
+                        break;
+                    case "collisions":
+                        collisions = Boolean.parseBoolean(t[1]);
+                        break;
+                    case "end":
+                        endTick = Long.parseLong(t[1]);
+                        break;
+                    default:
+                        events.add(parseEvent(Long.parseLong(t[0]), t[1], t.length > 2 ? t[2] : ""));
+                }
+            } catch (RuntimeException e) {
+                throw new IOException("Bad line " + (i + 1) + " in " + path + ": " + line, e);
+            }
+        }
+        // a recording cut short by a crash still replays up to its last command
+        long end = endTick != null ? endTick : events.isEmpty() ? 0 : events.get(events.size() - 1).tick + 1;
+        return new InputReplay(path, seed, deltaTime, motionMode, collisions, events, end);
+    }
+
+    private static Event parseEvent(long tick, String verb, String args) {
+        String[] a = args.split(" ");
+        switch (verb) {
+            case "spawn": {
+                String[] s = args.split(" ", 4);
+                return new Event(tick, new SimulationCommand.BeginSpawn(Integer.parseInt(s[0]),
+                        SpawnDistribution.parse(s[3]), Integer.parseInt(s[1]), Long.parseLong(s[2])), 0, 0);
+            }
+            case "batch":
+                return new Event(tick, null, Integer.parseInt(a[0]), Integer.parseInt(a[1]));
+            case "spawnNow": {
+                String[] s = args.split(" ", 2);
+                return new Event(tick, new SimulationCommand.Spawn(SpawnDistribution.parse(s[1]),
+                        Integer.parseInt(s[0])), 0, 0);
+            }
+            case "clear":
+                return new Event(tick, new SimulationCommand.Clear(), 0, 0);
+            case "removeRect":
+                return new Event(tick, new SimulationCommand.RemoveRect(Double.parseDouble(a[0]),
+                        Double.parseDouble(a[1]), Double.parseDouble(a[2]), Double.parseDouble(a[3])), 0, 0);
+            case "remove":
+                return new Event(tick, new SimulationCommand.RemoveParticle(Long.parseLong(a[0])), 0, 0);
+            case "expire":
+                return new Event(tick, new SimulationCommand.Expire(Double.parseDouble(a[0])), 0, 0);
+            case "lifetime":
+                return new Event(tick, new SimulationCommand.SetLifetime(Double.parseDouble(a[0])), 0, 0);
+            case "agents":
+                return new Event(tick, new SimulationCommand.SetAgents(Integer.parseInt(a[0]),
+                        ExplorerAgents.behaviourFor(a[1])), 0, 0);
+            case "move":
+                return new Event(tick, new SimulationCommand.MoveSprite(Integer.parseInt(a[0]),
+                        Integer.parseInt(a[1])), 0, 0);
+            case "mode":
+                return new Event(tick, new SimulationCommand.SetExplorerMode(a[0].equals("explorer")), 0, 0);
+            case "ff":
+                return new Event(tick, new SimulationCommand.FastForward(Double.parseDouble(a[0])), 0, 0);
+            case "load":
+                return new Event(tick, new SimulationCommand.LoadScene(Path.of(args)), 0, 0);
+            default:
+                throw new IllegalArgumentException("Unknown command: " + verb);
+        }
+    }
+
+    /** Applies the recorded settings and seed to a simulation that hasn't started yet. */
+    void configure(Simulation simulation) {
+        simulation.setMotionMode(motionMode);
+        simulation.setCollisionsEnabled(collisions);
+        simulation.setSeed(seed);
+    }
+
+    double getDeltaTime() {
+        return deltaTime;
+    }
+
+    long getEndTick() {
+        return endTick;
+    }
+
+    /** Simulation thread: submits every command recorded at or before {@code tick}. */
+    void feed(Simulation simulation, long tick) {
+        while (next < events.size() && events.get(next).tick <= tick) {
+            Event event = events.get(next++);
+            if (event.command instanceof SimulationCommand.BeginSpawn) {
+                prepareBatches((SimulationCommand.BeginSpawn) event.command);
+                simulation.submit(event.command);
+            } else if (event.command != null) {
+                simulation.submit(event.command);
+            } else {
+                List<CompletableFuture<ParticleStore>> batches = pendingBatches.get(event.job);
+                if (batches == null) {
+                    throw new IllegalStateException("Batch of unknown spawn " + event.job + " in " + path);
+                }
+                ParticleStore batch = batches.set(event.index, null).join();
+                simulation.submit(new SimulationCommand.InsertBatch(event.job, event.index, batch));
+            }
+        }
+    }
+
+    private void prepareBatches(SimulationCommand.BeginSpawn spawn) {
+        List<CompletableFuture<ParticleStore>> batches = new ArrayList<>();
+        for (int i = 0, n = BulkSpawner.batchCount(spawn.count); i < n; i++) {
+            int index = i;
+            batches.add(CompletableFuture.supplyAsync(
+                    () -> BulkSpawner.generateBatch(spawn.distribution, spawn.seed, spawn.count, index)));
+        }
+        pendingBatches.put(spawn.job, batches);
+    }
+
+    boolean isFinished(long tick) {
+        return next >= events.size() && tick >= endTick;
+    }
+
+    void recordFrame(long nanos) {
+        if (frames == frameNanos.length) {
+            frameNanos = Arrays.copyOf(frameNanos, frames * 2);
+        }
+        frameNanos[frames++] = nanos;
+    }
+
+    /**
+     * Simulation loop callback for window replays: records the time since the
+     * previous published frame and prints the summary once the recording is done.
+     */
+    void onFrame(Simulation simulation) {
+        long now = System.nanoTime();
+        if (reported) {
+            return;
+        }
+        if (lastFrame != 0) {
+            recordFrame(now - lastFrame);
+        }
+        lastFrame = now;
+        if (isFinished(simulation.getTick())) {
+            reported = true;
+            System.out.println(report("window", "screen", simulation));
+        }
+    }
+
+    String report(String mode, String render, Simulation simulation) {
+        long[] sorted = Arrays.copyOf(frameNanos, frames);
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long nanos : sorted) {
+            total += nanos;
+        }
+        StringBuilder json = new StringBuilder("{");
+        HeadlessBenchmark.field(json, "recording", '"' + path.getFileName().toString() + '"');
+        HeadlessBenchmark.field(json, "mode", '"' + mode + '"');
+        HeadlessBenchmark.field(json, "render", '"' + render + '"');
+        HeadlessBenchmark.field(json, "particles", simulation.particleCount());
+        HeadlessBenchmark.field(json, "ticks", endTick);
+        HeadlessBenchmark.field(json, "frames", frames);
+        HeadlessBenchmark.field(json, "totalMs", total / 1e6);
+        HeadlessBenchmark.field(json, "frameMeanMs", frames == 0 ? 0.0 : total / 1e6 / frames);
+        HeadlessBenchmark.field(json, "frameP50Ms", HeadlessBenchmark.percentile(sorted, 0.50) / 1e6);
+        HeadlessBenchmark.field(json, "frameP90Ms", HeadlessBenchmark.percentile(sorted, 0.90) / 1e6);
+        HeadlessBenchmark.field(json, "frameP99Ms", HeadlessBenchmark.percentile(sorted, 0.99) / 1e6);
+        HeadlessBenchmark.field(json, "frameMaxMs", frames == 0 ? 0.0 : sorted[frames - 1] / 1e6);
+        json.setLength(json.length() - 1);
+        return json.append('}').toString();
+    }
+
+    /**
+     * Headless replay: {@code java InputReplay <recording> [render=none|raster] [workers=N]}.
+     * The raster pass follows the recorded mode switches.
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length == 0) {
+            System.err.println("usage: InputReplay <recording> [render=none|raster] [workers=N]");
+            System.exit(2);
+        }
+        InputReplay replay = load(Path.of(args[0]));
+        Map<String, String> options = HeadlessBenchmark.parseArgs(Arrays.copyOfRange(args, 1, args.length));
+        String render = options.getOrDefault("render", "none");
+        ParallelStepper stepper = options.containsKey("workers")
+                ? new ParallelStepper(Integer.parseInt(options.get("workers")),
+                        ParallelStepper.DEFAULT_CHUNK_SIZE, ParallelStepper.DEFAULT_SEQUENTIAL_THRESHOLD)
+                : ParallelStepper.fromSystemProperties();
+
+        Simulation simulation = new Simulation(stepper);
+        replay.configure(simulation);
+        simulation.setReplay(replay);
+        RasterRenderer renderer = render.equals("none")
+                ? null : new RasterRenderer(Viewport.SCREEN_WIDTH, Viewport.SCREEN_HEIGHT, 10, stepper);
+        Viewport view = new Viewport(Viewport.SCREEN_WIDTH, Viewport.SCREEN_HEIGHT);
+
+        while (!replay.isFinished(simulation.getTick())) {
+            long t0 = System.nanoTime();
+            HeadlessBenchmark.runTick(simulation, renderer, null, view, replay.getDeltaTime());
+            replay.recordFrame(System.nanoTime() - t0);
+        }
+        System.out.println(replay.report("headless", render, simulation));
+        simulation.shutdown();
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of durations in nanoseconds: each power of two is split
+ * into 16 buckets, so any recorded value is known to within about 6%. Recording
+ * is a couple of atomic increments and never allocates. Counts are cumulative;
+ * {@link #roll} turns them into statistics for the interval since the previous
+ * roll, and only one thread may call it.
+ */
+class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    /** Statistics over one interval; durations in nanoseconds. */
+    static final class Stats {
+        static final Stats EMPTY = new Stats(0, 0, 0, 0, 0, 0);
+
+        final long count;
+        final long mean, p50, p90, p99, max;
+
+        Stats(long count, long mean, long p50, long p90, long p99, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.max = max;
+        }
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    // reader side: counts as of the previous roll
+    private final long[] previous = new long[BUCKETS];
+    private long previousSum;
+
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.getAndIncrement(index(nanos));
+        sum.getAndAdd(nanos);
+        total.getAndIncrement();
+        long m = max.get();
+        if (nanos > m) {
+            max.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    /** Values recorded since creation. */
+    long totalCount() {
+        return total.get();
+    }
+
+    /** Sum of the values recorded since creation. */
+    long totalNanos() {
+        return sum.get();
+    }
+
+    /** Statistics for everything recorded since the previous roll. */
+    Stats roll() {
+        long[] delta = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = counts.get(i);
+            delta[i] = c - previous[i];
+            previous[i] = c;
+            count += delta[i];
+        }
+        long intervalMax = max.getAndSet(0);
+        long s = sum.get();
+        long intervalSum = s - previousSum;
+        previousSum = s;
+        if (count == 0) {
+            return Stats.EMPTY;
+        }
+        // bucket bounds can overshoot the exact maximum
+        return new Stats(count, intervalSum / count, Math.min(intervalMax, percentile(delta, count, 0.50)),
+                Math.min(intervalMax, percentile(delta, count, 0.90)),
+                Math.min(intervalMax, percentile(delta, count, 0.99)), intervalMax);
+    }
+
+    private static long percentile(long[] delta, long count, double p) {
+        long rank = Math.max(1, (long) Math.ceil(p * count));
+        long seen = 0;
+        for (int i = 0; i < delta.length; i++) {
+            seen += delta[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(delta.length - 1);
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (msb - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (msb - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /** Largest value that lands in bucket {@code index}. */
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int msb = index / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        long lower = (1L << msb) | (sub << (msb - SUB_BITS));
+        return lower + (1L << (msb - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,71 @@
+import java.util.Locale;
+
+/**
+ * Chooses between drawing individual dots and the {@link DensityRenderer}
+ * heatmap. In AUTO mode density takes over once there are more particles than
+ * pixels, or once dots are predicted to blow the frame budget at the measured
+ * cost per dot. It only switches back with some headroom on both counts, so the
+ * view doesn't flicker around the threshold.
+ *
+ * Configured with -Drender.lod=auto|dots|density and -Drender.budgetMs
+ * (default 8, half a 60 Hz frame).
+ */
+class LevelOfDetail {
+    enum Mode { AUTO, DOTS, DENSITY }
+
+    static final double DEFAULT_BUDGET_MS = 8;
+    // frames with fewer dots than this are too short to time reliably
+    private static final int MIN_TIMED_DOTS = 10_000;
+
+    private final Mode mode;
+    private final int pixelCount;
+    private final long budgetNanos;
+    private double nanosPerDot;
+    private boolean density;
+
+    LevelOfDetail(Mode mode, int pixelCount, double budgetMs) {
+        this.mode = mode;
+        this.pixelCount = pixelCount;
+        this.budgetNanos = (long) (budgetMs * 1e6);
+        this.density = mode == Mode.DENSITY;
+    }
+
+    static LevelOfDetail fromSystemProperties(int pixelCount) {
+        Mode mode = Mode.valueOf(System.getProperty("render.lod", "auto").toUpperCase(Locale.ROOT));
+        String budget = System.getProperty("render.budgetMs");
+        return new LevelOfDetail(mode, pixelCount, budget == null ? DEFAULT_BUDGET_MS : Double.parseDouble(budget));
+    }
+
+    /** Decides how to draw a frame of {@code count} particles. */
+    boolean useDensity(int count) {
+        if (mode != Mode.AUTO) {
+            return density;
+        }
+        double predicted = nanosPerDot * count;
+        if (density) {
+            density = count > pixelCount / 2 || predicted > budgetNanos / 2;
+        } else {
+            density = count > pixelCount || predicted > budgetNanos;
+        }
+        return density;
+    }
+
+    /** Feeds back how long drawing {@code count} dots took. */
+    void recordDots(int count, long nanos) {
+        if (count < MIN_TIMED_DOTS) {
+            return;
+        }
+        double sample = (double) nanos / count;
+        // smoothed, so one slow frame (a GC, a resize) doesn't flip the mode
+        nanosPerDot = nanosPerDot == 0 ? sample : 0.8 * nanosPerDot + 0.2 * sample;
+    }
+
+    /** Whether the mode is chosen per frame rather than fixed with -Drender.lod. */
+    boolean isAuto() {
+        return mode == Mode.AUTO;
+    }
+
+    boolean isDensity() {
+        return density;
+    }
+}
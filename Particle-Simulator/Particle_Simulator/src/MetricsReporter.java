@@ -0,0 +1,272 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolls a {@link FrameMetrics} interval on a fixed period and publishes it:
+ * always as JMX MBeans ({@code ParticleSimulator:type=Frame} and one
+ * {@code ParticleSimulator:type=Phase,name=<phase>} per phase), optionally as a
+ * CSV row and a log line per interval.
+ *
+ * Configured with -Dmetrics.interval (milliseconds, default 1000),
+ * -Dmetrics.csv=file and -Dmetrics.log=true.
+ */
+class MetricsReporter {
+    static final long DEFAULT_INTERVAL_MS = 1000;
+    static final String DOMAIN = "ParticleSimulator";
+
+    private final FrameMetrics metrics;
+    private final long intervalMs;
+    private final Path csvPath;
+    private final boolean log;
+    private ScheduledExecutorService scheduler;
+    private BufferedWriter csv;
+
+    MetricsReporter(FrameMetrics metrics, long intervalMs, Path csvPath, boolean log) {
+        this.metrics = metrics;
+        this.intervalMs = Math.max(1, intervalMs);
+        this.csvPath = csvPath;
+        this.log = log;
+    }
+
+    static MetricsReporter fromSystemProperties(FrameMetrics metrics) {
+        String csv = System.getProperty("metrics.csv");
+        return new MetricsReporter(metrics, Long.getLong("metrics.interval", DEFAULT_INTERVAL_MS),
+                csv == null ? null : Path.of(csv), Boolean.getBoolean("metrics.log"));
+    }
+
+    synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        registerMBeans();
+        if (csvPath != null) {
+            try {
+                csv = Files.newBufferedWriter(csvPath, StandardCharsets.UTF_8);
+                csv.write(csvHeader());
+                csv.newLine();
+            } catch (IOException e) {
+                e.printStackTrace();
+                csv = null;
+            }
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(this::report, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+        if (csv != null) {
+            try {
+                csv.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            csv = null;
+        }
+    }
+
+    private void registerMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            register(server, new ObjectName(DOMAIN + ":type=Frame"),
+                    new StandardMBean(new FrameView(metrics), FrameMetricsMBean.class));
+            for (FrameMetrics.Phase phase : FrameMetrics.Phase.values()) {
+                register(server, new ObjectName(DOMAIN + ":type=Phase,name=" + phase.label()),
+                        new StandardMBean(new PhaseView(metrics, phase), PhaseTimerMBean.class));
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void register(MBeanServer server, ObjectName name, StandardMBean bean) throws JMException {
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(bean, name);
+    }
+
+    private void report() {
+        metrics.roll();
+        if (csv != null) {
+            try {
+                csv.write(csvRow());
+                csv.newLine();
+                csv.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (log) {
+            System.out.println(logLine());
+        }
+    }
+
+    private static String csvHeader() {
+        StringBuilder sb = new StringBuilder("epochMs,particles,fps,allocBytesPerSec,droppedFrames,droppedSteps");
+        for (FrameMetrics.Phase phase : FrameMetrics.Phase.values()) {
+            String p = phase.label();
+            sb.append(',').append(p).append("Count,").append(p).append("P50Ms,")
+                    .append(p).append("P99Ms,").append(p).append("MaxMs");
+        }
+        return sb.append(",agents,agentQueriesPerSec,governorDecisions,governorState").toString();
+    }
+
+    private String csvRow() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(System.currentTimeMillis()).append(',').append(metrics.getParticleCount())
+                .append(',').append(format(metrics.getFramesPerSecond()))
+                .append(',').append(format(metrics.getAllocatedBytesPerSecond()))
+                .append(',').append(metrics.getDroppedFrames())
+                .append(',').append(metrics.getDroppedSteps());
+        for (FrameMetrics.Phase phase : FrameMetrics.Phase.values()) {
+            LatencyHistogram.Stats s = metrics.getStats(phase);
+            sb.append(',').append(s.count).append(',').append(format(s.p50 / 1e6))
+                    .append(',').append(format(s.p99 / 1e6)).append(',').append(format(s.max / 1e6));
+        }
+        sb.append(',').append(metrics.getAgentCount()).append(',').append(format(metrics.getAgentQueriesPerSecond()));
+        // the state lists settings separated by spaces, never commas
+        sb.append(',').append(metrics.getGovernorDecisions()).append(',').append(metrics.getGovernorState());
+        return sb.toString();
+    }
+
+    private String logLine() {
+        StringBuilder sb = new StringBuilder("metrics");
+        sb.append(" particles=").append(metrics.getParticleCount())
+                .append(" fps=").append(format(metrics.getFramesPerSecond()))
+                .append(" alloc=").append(format(metrics.getAllocatedBytesPerSecond() / (1 << 20))).append("MB/s")
+                .append(" dropped=").append(metrics.getDroppedFrames()).append('/').append(metrics.getDroppedSteps());
+        for (FrameMetrics.Phase phase : FrameMetrics.Phase.values()) {
+            LatencyHistogram.Stats s = metrics.getStats(phase);
+            sb.append(" | ").append(phase.label()).append(' ').append(format(s.p50 / 1e6))
+                    .append('/').append(format(s.p99 / 1e6)).append('/').append(format(s.max / 1e6)).append("ms");
+        }
+        if (metrics.getAgentCount() > 0) {
+            sb.append(" | agents=").append(metrics.getAgentCount())
+                    .append(" queriesPerSec=").append(format(metrics.getAgentQueriesPerSecond()));
+        }
+        sb.append(" | governor ").append(metrics.getGovernorState());
+        return sb.toString();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static final class FrameView implements FrameMetricsMBean {
+        private final FrameMetrics metrics;
+
+        FrameView(FrameMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public int getParticleCount() {
+            return metrics.getParticleCount();
+        }
+
+        @Override
+        public double getFramesPerSecond() {
+            return metrics.getFramesPerSecond();
+        }
+
+        @Override
+        public double getAllocatedBytesPerSecond() {
+            return metrics.getAllocatedBytesPerSecond();
+        }
+
+        @Override
+        public long getDroppedFrames() {
+            return metrics.getDroppedFrames();
+        }
+
+        @Override
+        public long getDroppedSteps() {
+            return metrics.getDroppedSteps();
+        }
+
+        @Override
+        public int getAgentCount() {
+            return metrics.getAgentCount();
+        }
+
+        @Override
+        public double getAgentQueriesPerSecond() {
+            return metrics.getAgentQueriesPerSecond();
+        }
+
+        @Override
+        public String getGovernorState() {
+            return metrics.getGovernorState();
+        }
+
+        @Override
+        public String getGovernorDecision() {
+            return metrics.getGovernorDecision();
+        }
+
+        @Override
+        public long getGovernorDecisions() {
+            return metrics.getGovernorDecisions();
+        }
+    }
+
+    private static final class PhaseView implements PhaseTimerMBean {
+        private final FrameMetrics metrics;
+        private final FrameMetrics.Phase phase;
+
+        PhaseView(FrameMetrics metrics, FrameMetrics.Phase phase) {
+            this.metrics = metrics;
+            this.phase = phase;
+        }
+
+        @Override
+        public long getCount() {
+            return metrics.getStats(phase).count;
+        }
+
+        @Override
+        public double getMeanMs() {
+            return metrics.getStats(phase).mean / 1e6;
+        }
+
+        @Override
+        public double getP50Ms() {
+            return metrics.getStats(phase).p50 / 1e6;
+        }
+
+        @Override
+        public double getP90Ms() {
+            return metrics.getStats(phase).p90 / 1e6;
+        }
+
+        @Override
+        public double getP99Ms() {
+            return metrics.getStats(phase).p99 / 1e6;
+        }
+
+        @Override
+        public double getMaxMs() {
+            return metrics.getStats(phase).max / 1e6;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Unbounded multi-producer, single-consumer linked queue (Vyukov style).
+ * {@link #offer} is one atomic swap plus one store, so producers never block and
+ * never retry. The consumer walks the links without any atomic read-modify-write.
+ *
+ * A producer that has swapped itself in but not yet linked its node makes the
+ * consumer stop one element early; that element is picked up on the next drain.
+ */
+class MpscQueue<T> {
+    private static final class Node<T> {
+        final T value;
+        volatile Node<T> next;
+
+        Node(T value) {
+            this.value = value;
+        }
+    }
+
+    private final AtomicReference<Node<T>> head;
+    // consumer-owned; the node before the first unconsumed element
+    private Node<T> tail;
+
+    MpscQueue() {
+        Node<T> stub = new Node<>(null);
+        head = new AtomicReference<>(stub);
+        tail = stub;
+    }
+
+    /** Any thread. */
+    void offer(T value) {
+        Node<T> node = new Node<>(value);
+        Node<T> previous = head.getAndSet(node);
+        previous.next = node;
+    }
+
+    /** Consumer thread only. Hands every element available right now to {@code consumer}, oldest first. */
+    int drain(Consumer<? super T> consumer) {
+        int drained = 0;
+        Node<T> next;
+        while ((next = tail.next) != null) {
+            tail = next;
+            drained++;
+            consumer.accept(next.value);
+        }
+        return drained;
+    }
+
+    /** Consumer thread only. */
+    boolean isEmpty() {
+        return tail.next == null;
+    }
+}
@@ -0,0 +1,334 @@
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.SplittableRandom;
+
+/**
+ * Particle columns kept outside the Java heap, for scenes whose arrays would
+ * otherwise put gigabytes on the heap for the collector to scan and copy. Each of
+ * x, y, vx and vy is one native column in native byte order, so the heap only
+ * holds the few buffer objects, whatever the particle count. {@link Simulation}
+ * keeps its particles here with -Dsim.storage=offheap|offheap32.
+ *
+ * {@link Layout#F64} keeps the doubles of {@link ParticleStore}, 32 bytes per
+ * particle. {@link Layout#F32} stores floats, 16 bytes per particle, which is
+ * still finer than a thousandth of a unit anywhere in a world under 16384 units
+ * wide. The step does its arithmetic in doubles either way.
+ *
+ * The columns come from a {@link ColumnMemory}. With the foreign memory module
+ * loaded, {@link #close} and every growth free the old columns on the spot;
+ * otherwise they are direct buffers that go back to the system once collected,
+ * and count against -XX:MaxDirectMemorySize. Give the capacity up front where it
+ * is known: growing copies every column. One column holds at most 2 GB, about 268
+ * million particles in F64 and twice that in F32.
+ *
+ * Readers get positions through {@link #forEachChunk}, a few thousand floats at a
+ * time copied into their own scratch arrays, so each reader has one loop for both
+ * layouts and the scene is never copied onto the heap.
+ *
+ * Not thread-safe, except that {@link #step}, {@link #advance} and
+ * {@link #forEachChunk} may run on disjoint ranges at once.
+ */
+class OffHeapParticles implements AutoCloseable {
+    enum Layout {
+        F64(Double.BYTES), F32(Float.BYTES);
+
+        final int bytes;
+
+        Layout(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    /** Positions {@link #forEachChunk} reads at a time; its scratch arrays need this many floats. */
+    static final int CHUNK = 4096;
+    // spawn batch drawn on the heap and copied out, so fill needs no heap the size of the scene
+    private static final int FILL_BATCH = 16_384;
+
+    /** Receives positions {@code [0, n)} of {@code xs}/{@code ys}, which are particles {@code [from, from + n)}. */
+    interface ChunkTask {
+        void run(int from, float[] xs, float[] ys, int n);
+    }
+
+    private final Layout layout;
+    private ColumnMemory memory;
+    private int capacity, size;
+    // F64 columns, null in F32
+    private DoubleBuffer dx, dy, dvx, dvy;
+    // F32 columns, null in F64
+    private FloatBuffer fx, fy, fvx, fvy;
+    private ParticleStore scratch;
+
+    OffHeapParticles(Layout layout, int capacity) {
+        this.layout = layout;
+        allocate(Math.max(1, capacity));
+    }
+
+    Layout getLayout() {
+        return layout;
+    }
+
+    /** Where the columns live: "segments" or "direct" (see {@link ColumnMemory}). */
+    String getMemoryName() {
+        return memory.name();
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Off-heap bytes held by the columns. */
+    long bytes() {
+        return 4L * capacity * layout.bytes;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /** Frees the columns; the store must not be used afterwards. */
+    @Override
+    public void close() {
+        dx = dy = dvx = dvy = null;
+        fx = fy = fvx = fvy = null;
+        capacity = size = 0;
+        memory.close();
+    }
+
+    /**
+     * Reads the positions of particles {@code [from, to)} into {@code xs}/{@code ys},
+     * {@link #CHUNK} at a time, and hands each chunk to {@code task}.
+     */
+    void forEachChunk(int from, int to, float[] xs, float[] ys, ChunkTask task) {
+        for (int i = from; i < to; i += CHUNK) {
+            int n = Math.min(CHUNK, to - i);
+            if (layout == Layout.F64) {
+                for (int k = 0; k < n; k++) {
+                    xs[k] = (float) dx.get(i + k);
+                    ys[k] = (float) dy.get(i + k);
+                }
+            } else {
+                fx.get(i, xs, 0, n);
+                fy.get(i, ys, 0, n);
+            }
+            task.run(i, xs, ys, n);
+        }
+    }
+
+    /** Appends {@code n} particles drawn from {@code distribution}, a batch at a time. */
+    void fill(SpawnDistribution distribution, SplittableRandom random, int n) {
+        ensureCapacity(size + n);
+        if (scratch == null) {
+            scratch = new ParticleStore(FILL_BATCH);
+        }
+        for (int done = 0; done < n; ) {
+            int batch = Math.min(FILL_BATCH, n - done);
+            scratch.clear();
+            scratch.fill(distribution, random, batch);
+            put(scratch, size, batch);
+            size += batch;
+            done += batch;
+        }
+    }
+
+    /** Appends every particle of {@code batch}, e.g. one made by {@link BulkSpawner}. */
+    void append(ParticleStore batch) {
+        ensureCapacity(size + batch.size());
+        put(batch, size, batch.size());
+        size += batch.size();
+    }
+
+    private void put(ParticleStore source, int at, int n) {
+        if (layout == Layout.F64) {
+            dx.put(at, source.x, 0, n);
+            dy.put(at, source.y, 0, n);
+            dvx.put(at, source.vx, 0, n);
+            dvy.put(at, source.vy, 0, n);
+        } else {
+            for (int i = 0; i < n; i++) {
+                fx.put(at + i, (float) source.x[i]);
+                fy.put(at + i, (float) source.y[i]);
+                fvx.put(at + i, (float) source.vx[i]);
+                fvy.put(at + i, (float) source.vy[i]);
+            }
+        }
+    }
+
+    void step(double deltaTime) {
+        step(0, size, deltaTime);
+    }
+
+    /**
+     * Moves particles in {@code [from, to)} like {@link ParticleStore#step(int, int, double)},
+     * reflecting through {@link ParticleStore#reflect}. F32 rounds the results to floats.
+     */
+    void step(int from, int to, double deltaTime) {
+        int width = ParticleStore.WIDTH, height = ParticleStore.HEIGHT;
+        if (layout == Layout.F64) {
+            DoubleBuffer x = dx, y = dy, vx = dvx, vy = dvy;
+            for (int i = from; i < to; i++) {
+                double nx = x.get(i) + vx.get(i) * deltaTime;
+                double ny = y.get(i) + vy.get(i) * deltaTime;
+                x.put(i, nx);
+                y.put(i, ny);
+                vx.put(i, ParticleStore.reflect(nx, vx.get(i), width));
+                vy.put(i, ParticleStore.reflect(ny, vy.get(i), height));
+            }
+        } else {
+            FloatBuffer x = fx, y = fy, vx = fvx, vy = fvy;
+            for (int i = from; i < to; i++) {
+                double nx = x.get(i) + vx.get(i) * deltaTime;
+                double ny = y.get(i) + vy.get(i) * deltaTime;
+                x.put(i, (float) nx);
+                y.put(i, (float) ny);
+                vx.put(i, (float) ParticleStore.reflect(nx, vx.get(i), width));
+                vy.put(i, (float) ParticleStore.reflect(ny, vy.get(i), height));
+            }
+        }
+    }
+
+    /** Moves particles {@code [from, to)} {@code t} seconds ahead in closed form, like {@link AnalyticMotion#advance}. */
+    void advance(int from, int to, double t) {
+        double width = ParticleStore.WIDTH, height = ParticleStore.HEIGHT;
+        for (int i = from; i < to; i++) {
+            double ux = AnalyticMotion.unfold(x(i), vx(i), t, width);
+            double uy = AnalyticMotion.unfold(y(i), vy(i), t, height);
+            set(i, ux > width ? 2 * width - ux : ux, uy > height ? 2 * height - uy : uy,
+                    ux > width ? -vx(i) : vx(i), uy > height ? -vy(i) : vy(i));
+        }
+    }
+
+    private double x(int i) {
+        return layout == Layout.F64 ? dx.get(i) : fx.get(i);
+    }
+
+    private double y(int i) {
+        return layout == Layout.F64 ? dy.get(i) : fy.get(i);
+    }
+
+    private double vx(int i) {
+        return layout == Layout.F64 ? dvx.get(i) : fvx.get(i);
+    }
+
+    private double vy(int i) {
+        return layout == Layout.F64 ? dvy.get(i) : fvy.get(i);
+    }
+
+    private void set(int i, double x, double y, double vx, double vy) {
+        if (layout == Layout.F64) {
+            dx.put(i, x);
+            dy.put(i, y);
+            dvx.put(i, vx);
+            dvy.put(i, vy);
+        } else {
+            fx.put(i, (float) x);
+            fy.put(i, (float) y);
+            fvx.put(i, (float) vx);
+            fvy.put(i, (float) vy);
+        }
+    }
+
+    /** Replaces the particles of {@code target}, a scratch store, with these, e.g. to compare the two. */
+    void copyTo(ParticleStore target) {
+        target.clear();
+        target.ensureCapacity(size);
+        for (int i = 0; i < size; i++) {
+            target.x[i] = x(i);
+            target.y[i] = y(i);
+            target.vx[i] = vx(i);
+            target.vy[i] = vy(i);
+        }
+        target.setSize(size);
+    }
+
+    /** Writes column {@code column} (x, y, vx, vy) of every particle into {@code out} from index 0, for {@link SceneFile}. */
+    void readColumn(int column, DoubleBuffer out) {
+        if (layout == Layout.F64) {
+            out.put(0, doubleColumn(column), 0, size);
+        } else {
+            FloatBuffer in = floatColumn(column);
+            for (int i = 0; i < size; i++) {
+                out.put(i, in.get(i));
+            }
+        }
+    }
+
+    /** Replaces the particles with the {@code n} in {@code columns} (x, y, vx, vy), for {@link SceneFile}. */
+    void load(int n, DoubleBuffer[] columns) {
+        clear();
+        ensureCapacity(n);
+        for (int c = 0; c < columns.length; c++) {
+            if (layout == Layout.F64) {
+                doubleColumn(c).put(0, columns[c], 0, n);
+            } else {
+                FloatBuffer out = floatColumn(c);
+                for (int i = 0; i < n; i++) {
+                    out.put(i, (float) columns[c].get(i));
+                }
+            }
+        }
+        size = n;
+    }
+
+    private DoubleBuffer doubleColumn(int column) {
+        return column == 0 ? dx : column == 1 ? dy : column == 2 ? dvx : dvy;
+    }
+
+    private FloatBuffer floatColumn(int column) {
+        return column == 0 ? fx : column == 1 ? fy : column == 2 ? fvx : fvy;
+    }
+
+    /**
+     * Grows the columns so that at least {@code capacity} particles fit, copying the
+     * current ones over and closing the old columns' memory.
+     */
+    void ensureCapacity(int capacity) {
+        if (capacity <= this.capacity) {
+            return;
+        }
+        long grown = Math.max(capacity, this.capacity + (this.capacity >> 1));
+        int newCapacity = (int) Math.min(grown, Integer.MAX_VALUE / layout.bytes);
+        if (newCapacity < capacity) {
+            throw new IllegalArgumentException(capacity + " particles don't fit in one " + layout + " column");
+        }
+        ColumnMemory old = memory;
+        DoubleBuffer ox = dx, oy = dy, ovx = dvx, ovy = dvy;
+        FloatBuffer ofx = fx, ofy = fy, ofvx = fvx, ofvy = fvy;
+        allocate(newCapacity);
+        if (layout == Layout.F64) {
+            dx.put(0, ox, 0, size);
+            dy.put(0, oy, 0, size);
+            dvx.put(0, ovx, 0, size);
+            dvy.put(0, ovy, 0, size);
+        } else {
+            fx.put(0, ofx, 0, size);
+            fy.put(0, ofy, 0, size);
+            fvx.put(0, ofvx, 0, size);
+            fvy.put(0, ofvy, 0, size);
+        }
+        old.close();
+    }
+
+    private void allocate(int capacity) {
+        if ((long) capacity * layout.bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(capacity + " particles don't fit in one " + layout + " column");
+        }
+        memory = ColumnMemory.open();
+        this.capacity = capacity;
+        if (layout == Layout.F64) {
+            dx = column(capacity).asDoubleBuffer();
+            dy = column(capacity).asDoubleBuffer();
+            dvx = column(capacity).asDoubleBuffer();
+            dvy = column(capacity).asDoubleBuffer();
+        } else {
+            fx = column(capacity).asFloatBuffer();
+            fy = column(capacity).asFloatBuffer();
+            fvx = column(capacity).asFloatBuffer();
+            fvy = column(capacity).asFloatBuffer();
+        }
+    }
+
+    private ByteBuffer column(int capacity) {
+        return memory.allocate(capacity * layout.bytes);
+    }
+}
@@ -0,0 +1,143 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Steps a {@link ParticleStore} across a fork/join pool. The store is split into
+ * contiguous chunks that are moved independently; {@link #step} only returns once
+ * every chunk is done, so callers can render right after it. Other per-particle
+ * passes can use the same pool through {@link #forEachChunk}. Each chunk is
+ * moved by the current {@link StepKernel}, which can be swapped between steps.
+ *
+ * Configurable with -Dsim.workers, -Dsim.chunkSize, -Dsim.sequentialThreshold
+ * and -Dsim.kernel.
+ */
+class ParallelStepper {
+    static final int DEFAULT_CHUNK_SIZE = 16_384;
+    static final int DEFAULT_SEQUENTIAL_THRESHOLD = 50_000;
+
+    private final ForkJoinPool pool;
+    private final int workers;
+    private final int chunkSize;
+    private final int sequentialThreshold;
+    private volatile StepKernel kernel = StepKernel.SCALAR;
+    // passes are cut into about this many pieces at most; lowered to leave cores to other work
+    private volatile int activeWorkers;
+
+    ParallelStepper(int workers, int chunkSize, int sequentialThreshold) {
+        this.workers = Math.max(1, workers);
+        this.activeWorkers = this.workers;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.sequentialThreshold = Math.max(0, sequentialThreshold);
+        this.pool = this.workers > 1 ? new ForkJoinPool(this.workers) : null;
+    }
+
+    static ParallelStepper fromSystemProperties() {
+        ParallelStepper stepper = new ParallelStepper(
+                Integer.getInteger("sim.workers", Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("sim.chunkSize", DEFAULT_CHUNK_SIZE),
+                Integer.getInteger("sim.sequentialThreshold", DEFAULT_SEQUENTIAL_THRESHOLD));
+        stepper.setKernel(StepKernel.fromSystemProperties());
+        return stepper;
+    }
+
+    /** A separate pool for render passes, sized with -Drender.workers, so drawing never queues behind physics. */
+    static ParallelStepper forRendering() {
+        return new ParallelStepper(
+                Integer.getInteger("render.workers", Runtime.getRuntime().availableProcessors()),
+                DEFAULT_CHUNK_SIZE, DEFAULT_SEQUENTIAL_THRESHOLD);
+    }
+
+    int getWorkers() {
+        return workers;
+    }
+
+    /** Caps how many workers a pass keeps busy, between 1 and {@link #getWorkers}. */
+    void setActiveWorkers(int activeWorkers) {
+        this.activeWorkers = Math.max(1, Math.min(workers, activeWorkers));
+    }
+
+    int getActiveWorkers() {
+        return activeWorkers;
+    }
+
+    int getChunkSize() {
+        return chunkSize;
+    }
+
+    StepKernel getKernel() {
+        return kernel;
+    }
+
+    void setKernel(StepKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    /** Work over a contiguous index range {@code [from, to)}. */
+    interface RangeTask {
+        void run(int from, int to);
+    }
+
+    void step(ParticleStore store, double deltaTime) {
+        StepKernel kernel = this.kernel;
+        forEachChunk(store.size(), (from, to) -> kernel.step(store, from, to, deltaTime));
+    }
+
+    /** Runs {@code task} over {@code [0, n)} in chunks and returns once all of them are done. */
+    void forEachChunk(int n, RangeTask task) {
+        int active = activeWorkers;
+        if (pool == null || n <= sequentialThreshold || active == 1) {
+            task.run(0, n);
+            return;
+        }
+        pool.invoke(new ChunkTask(task, 0, n, grainFor(n, chunkSize, active)));
+    }
+
+    /**
+     * Like {@link #forEachChunk(int, RangeTask)} but splits down to {@code grain}
+     * items and ignores the sequential threshold, for a few coarse work items such
+     * as grid regions.
+     */
+    void forEachChunk(int n, int grain, RangeTask task) {
+        int active = activeWorkers;
+        if (pool == null || n <= grain || active == 1) {
+            task.run(0, n);
+            return;
+        }
+        pool.invoke(new ChunkTask(task, 0, n, grainFor(n, Math.max(1, grain), active)));
+    }
+
+    /** {@code grain}, coarsened while fewer than all workers are active so that only about that many pieces exist. */
+    private int grainFor(int n, int grain, int active) {
+        return active < workers ? Math.max(grain, (n + active - 1) / active) : grain;
+    }
+
+    void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private static class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RangeTask task;
+        private final int from, to, grain;
+
+        ChunkTask(RangeTask task, int from, int to, int grain) {
+            this.task = task;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                task.run(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ChunkTask(task, from, mid, grain), new ChunkTask(task, mid, to, grain));
+        }
+    }
+}
@@ -3,8 +3,8 @@ public class Particle {
     double angle; // angle in degrees
     double velocity; // velocity in pixels per second
 
-    private final int WIDTH = 1280;
-    private final int HEIGHT = 720;
+    private static final int WIDTH = ParticleStore.WIDTH;
+    private static final int HEIGHT = ParticleStore.HEIGHT;
 
     Particle(double x, double y, double angle, double velocity) {
         this.x = x;
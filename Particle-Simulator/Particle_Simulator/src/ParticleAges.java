@@ -0,0 +1,117 @@
+import java.util.Arrays;
+
+/**
+ * Birth order of a store's particles, for removing them by age in time
+ * proportional to the number removed. Particles are only added at the current
+ * simulation time, which never runs backwards, so handles queued in order of
+ * addition are also in order of age and the oldest are always at the front.
+ * Particles born together, e.g. by one spawn, share one run of the queue.
+ *
+ * Particles removed some other way leave dead handles behind, which are skipped
+ * when they reach the front. The queue is compacted once it holds more than
+ * twice as many handles as there are particles, so that costs O(1) amortized
+ * per removal.
+ */
+final class ParticleAges {
+    private static final int MIN_COMPACT = 4096;
+
+    // queued handles are [head, tail)
+    private long[] handles = new long[1024];
+    private int head, tail;
+    // runs of handles born at the same time, [runHead, runTail)
+    private double[] runBorn = new double[64];
+    private int[] runLength = new int[64];
+    private int runHead, runTail;
+
+    /** Queues particles {@code [from, to)} of {@code store}, born at {@code time}. */
+    void born(ParticleStore store, int from, int to, double time) {
+        int n = to - from;
+        if (n <= 0) {
+            return;
+        }
+        if (tail + n > handles.length) {
+            compact(store, n);
+        }
+        for (int i = from; i < to; i++) {
+            handles[tail++] = store.handleOf(i);
+        }
+        if (runTail > runHead && runBorn[runTail - 1] == time) {
+            runLength[runTail - 1] += n;
+            return;
+        }
+        if (runTail == runBorn.length) {
+            compactRuns();
+        }
+        runBorn[runTail] = time;
+        runLength[runTail++] = n;
+    }
+
+    /** Removes every particle of {@code store} born at or before {@code time}; returns how many. */
+    int expire(ParticleStore store, double time) {
+        int removed = 0;
+        while (runHead < runTail && runBorn[runHead] <= time) {
+            for (int end = head + runLength[runHead]; head < end; head++) {
+                if (store.remove(handles[head])) {
+                    removed++;
+                }
+            }
+            runHead++;
+        }
+        return removed;
+    }
+
+    /** Sim time the oldest queued particle was born at, or NaN if there are none. */
+    double oldest() {
+        return runHead < runTail ? runBorn[runHead] : Double.NaN;
+    }
+
+    void clear() {
+        head = tail = 0;
+        runHead = runTail = 0;
+    }
+
+    /** Drops the dead handles once they make up most of the queue; call after removing particles. */
+    void trim(ParticleStore store) {
+        if (tail - head > MIN_COMPACT && tail - head > 2 * store.size()) {
+            compact(store, 0);
+        }
+    }
+
+    /** Keeps only live handles, moved to the front, with room for {@code extra} more. */
+    private void compact(ParticleStore store, int extra) {
+        int kept = 0, runs = 0;
+        for (int r = runHead; r < runTail; r++) {
+            int runKept = 0;
+            for (int end = head + runLength[r]; head < end; head++) {
+                if (store.indexOf(handles[head]) >= 0) {
+                    handles[kept++] = handles[head];
+                    runKept++;
+                }
+            }
+            if (runKept > 0) {
+                runBorn[runs] = runBorn[r];
+                runLength[runs++] = runKept;
+            }
+        }
+        head = 0;
+        tail = kept;
+        runHead = 0;
+        runTail = runs;
+        if (kept + extra > handles.length) {
+            handles = Arrays.copyOf(handles, Math.max(kept + extra, handles.length + (handles.length >> 1)));
+        }
+    }
+
+    private void compactRuns() {
+        int runs = runTail - runHead;
+        if (runs < runBorn.length / 2) {
+            System.arraycopy(runBorn, runHead, runBorn, 0, runs);
+            System.arraycopy(runLength, runHead, runLength, 0, runs);
+        } else {
+            runBorn = Arrays.copyOfRange(runBorn, runHead, runHead + 2 * runs);
+            runLength = Arrays.copyOfRange(runLength, runHead, runHead + 2 * runs);
+        }
+        runHead = 0;
+        runTail = runs;
+    }
+}
@@ -0,0 +1,78 @@
+import java.util.Arrays;
+
+/**
+ * Stable names for the particles of a {@link ParticleStore}, whose indices
+ * change whenever particles are removed or regrouped. A handle packs a slot of
+ * this table with the slot's generation. The slot holds the particle's current
+ * index, and the store updates it on every move. Freeing a slot moves its
+ * generation on, so a handle to a removed particle stays dead even after the
+ * slot is reused.
+ *
+ * Every operation is O(1) except {@link #clear}.
+ */
+final class ParticleHandles {
+    static final long NONE = -1;
+
+    // per slot: index of the particle holding it, or -1 while free
+    private int[] index = new int[1024];
+    private int[] generation = new int[1024];
+    // stack of free slots below 'used'; slots at or past 'used' were never handed out
+    private int[] free = new int[1024];
+    private int freeCount;
+    private int used;
+
+    /** Takes a slot for the particle at {@code particleIndex} and returns it. */
+    int allocate(int particleIndex) {
+        int slot;
+        if (freeCount > 0) {
+            slot = free[--freeCount];
+        } else {
+            if (used == index.length) {
+                int capacity = index.length + (index.length >> 1);
+                index = Arrays.copyOf(index, capacity);
+                generation = Arrays.copyOf(generation, capacity);
+                free = Arrays.copyOf(free, capacity);
+            }
+            slot = used++;
+        }
+        index[slot] = particleIndex;
+        return slot;
+    }
+
+    void release(int slot) {
+        index[slot] = -1;
+        generation[slot]++;
+        free[freeCount++] = slot;
+    }
+
+    /** Records that the particle holding {@code slot} now lives at {@code particleIndex}. */
+    void moved(int slot, int particleIndex) {
+        index[slot] = particleIndex;
+    }
+
+    long handle(int slot) {
+        // 31 bits of generation, so a handle is never negative
+        return (long) (generation[slot] & Integer.MAX_VALUE) << 32 | slot;
+    }
+
+    /** The current index of the particle named by {@code handle}, or -1 if it has been removed. */
+    int indexOf(long handle) {
+        int slot = (int) handle;
+        if (handle < 0 || slot >= used || (generation[slot] & Integer.MAX_VALUE) != (int) (handle >>> 32)) {
+            return -1;
+        }
+        return index[slot];
+    }
+
+    /** Frees every slot, ending every handle handed out so far. */
+    void clear() {
+        freeCount = 0;
+        for (int slot = used - 1; slot >= 0; slot--) {
+            if (index[slot] >= 0) {
+                index[slot] = -1;
+                generation[slot]++;
+            }
+            free[freeCount++] = slot;
+        }
+    }
+}
@@ -2,6 +2,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.nio.file.Path;
 
 class ParticleSimulator extends JFrame implements KeyListener {
     private Canvas canvas;
@@ -9,6 +10,15 @@ class ParticleSimulator extends JFrame implements KeyListener {
     private JButton particleByDistanceButton;
     private JButton particleByAngleButton;
     private JButton particleByVelocityButton;
+    private JButton fastForwardButton;
+    private JButton saveSceneButton;
+    private JButton loadSceneButton;
+    private JButton clearButton;
+    private JButton removeRegionButton;
+    private JButton expireButton;
+    private JButton lifetimeButton;
+    private JButton agentsButton;
+    private JProgressBar spawnProgressBar;
 
     public static final int FRAME_WIDTH = 1600;
     public static final int FRAME_HEIGHT = 900;
@@ -52,6 +62,124 @@ class ParticleSimulator extends JFrame implements KeyListener {
             particleByVelocityDialog.setVisible(true);
         });
 
+        fastForwardButton = new JButton("Fast Forward");
+        fastForwardButton.setFocusable(false);
+        fastForwardButton.addActionListener(e -> {
+            String input = JOptionPane.showInputDialog(this, "Seconds to skip ahead:", "Fast Forward",
+                    JOptionPane.PLAIN_MESSAGE);
+            if (input != null && !input.trim().isEmpty()) {
+                double seconds;
+                try {
+                    seconds = Double.parseDouble(input.trim());
+                } catch (NumberFormatException ex) {
+                    seconds = Double.NaN;
+                }
+                if (seconds > 0 && !Double.isInfinite(seconds)) {
+                    canvas.fastForward(seconds);
+                } else {
+                    JOptionPane.showMessageDialog(this, "Enter a positive number of seconds, not \"" + input.trim() + "\".",
+                            "Fast Forward", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        });
+
+        saveSceneButton = new JButton("Save Scene");
+        saveSceneButton.setFocusable(false);
+        saveSceneButton.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser();
+            if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+                Path path = chooser.getSelectedFile().toPath();
+                canvas.saveScene(path).whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
+                                "Could not save scene: " + error.getMessage(), "Save Scene", JOptionPane.ERROR_MESSAGE));
+                    }
+                });
+            }
+        });
+        loadSceneButton = new JButton("Load Scene");
+        loadSceneButton.setFocusable(false);
+        loadSceneButton.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser();
+            if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+                Path path = chooser.getSelectedFile().toPath();
+                canvas.loadScene(path).whenComplete((explorerMode, error) -> SwingUtilities.invokeLater(() -> {
+                    if (error != null) {
+                        JOptionPane.showMessageDialog(this, "Could not load scene: " + error.getMessage(),
+                                "Load Scene", JOptionPane.ERROR_MESSAGE);
+                    } else {
+                        canvas.setExplorerMode(explorerMode);
+                        updateModeButtons();
+                    }
+                }));
+            }
+        });
+
+        clearButton = new JButton("Clear Particles");
+        clearButton.setFocusable(false);
+        clearButton.addActionListener(e -> canvas.clearParticles());
+        removeRegionButton = new JButton("Remove Region (Shift+Drag)");
+        removeRegionButton.setFocusable(false);
+        removeRegionButton.addActionListener(e -> canvas.armRegionRemoval());
+        expireButton = new JButton("Expire Particles");
+        expireButton.setFocusable(false);
+        expireButton.addActionListener(e -> {
+            String input = JOptionPane.showInputDialog(this, "Remove particles older than (seconds):",
+                    "Expire Particles", JOptionPane.PLAIN_MESSAGE);
+            if (input != null && !input.trim().isEmpty()) {
+                canvas.expireParticles(Double.parseDouble(input.trim()));
+            }
+        });
+        lifetimeButton = new JButton("Set Lifetime");
+        lifetimeButton.setFocusable(false);
+        lifetimeButton.addActionListener(e -> {
+            String input = JOptionPane.showInputDialog(this, "Particle lifetime in seconds (0 = forever):",
+                    "Set Lifetime", JOptionPane.PLAIN_MESSAGE);
+            if (input != null && !input.trim().isEmpty()) {
+                canvas.setParticleLifetime(Double.parseDouble(input.trim()));
+            }
+        });
+
+        agentsButton = new JButton("Explorer Agents");
+        agentsButton.setFocusable(false);
+        agentsButton.addActionListener(e -> {
+            String input = JOptionPane.showInputDialog(this, "Number of autonomous explorers (0 = none):",
+                    "Explorer Agents", JOptionPane.PLAIN_MESSAGE);
+            if (input != null && !input.trim().isEmpty()) {
+                canvas.setExplorerAgents(Integer.parseInt(input.trim()));
+            }
+        });
+        if (!canvas.isHeapStorage()) {
+            for (JButton button : new JButton[] {removeRegionButton, expireButton, lifetimeButton, agentsButton}) {
+                button.setEnabled(false);
+                button.setToolTipText("Needs -Dsim.storage=heap");
+            }
+        }
+
+        spawnProgressBar = new JProgressBar(0, 1000);
+        spawnProgressBar.setStringPainted(true);
+        spawnProgressBar.setVisible(false);
+        canvas.setSpawnProgressListener(new BulkSpawner.ProgressListener() {
+            @Override
+            public void onProgress(long spawned, long total) {
+                SwingUtilities.invokeLater(() -> {
+                    spawnProgressBar.setValue((int) (spawned * 1000 / Math.max(1, total)));
+                    spawnProgressBar.setString("Spawning " + spawned + " / " + total);
+                    spawnProgressBar.setVisible(spawned < total);
+                });
+            }
+
+            @Override
+            public void onFailure(long spawned, long total, Throwable error) {
+                SwingUtilities.invokeLater(() -> {
+                    spawnProgressBar.setValue(0);
+                    spawnProgressBar.setVisible(false);
+                    JOptionPane.showMessageDialog(ParticleSimulator.this, "Spawning stopped after " + spawned + " of "
+                            + total + " particles: " + error, "Add Particles", JOptionPane.ERROR_MESSAGE);
+                });
+            }
+        });
+
         switchModeButton = new JButton("Switch Mode (Space)");
         switchModeButton.setFocusable(false);
         switchModeButton.addActionListener(e -> toggleMode());
@@ -59,7 +187,16 @@ class ParticleSimulator extends JFrame implements KeyListener {
         buttonPanel.add(particleByDistanceButton);
         buttonPanel.add(particleByAngleButton);
         buttonPanel.add(particleByVelocityButton);
+        buttonPanel.add(fastForwardButton);
+        buttonPanel.add(saveSceneButton);
+        buttonPanel.add(loadSceneButton);
+        buttonPanel.add(clearButton);
+        buttonPanel.add(removeRegionButton);
+        buttonPanel.add(expireButton);
+        buttonPanel.add(lifetimeButton);
+        buttonPanel.add(agentsButton);
         buttonPanel.add(switchModeButton);
+        buttonPanel.add(spawnProgressBar);
 
         panel.add(buttonPanel);
         add(panel);
@@ -69,15 +206,15 @@ class ParticleSimulator extends JFrame implements KeyListener {
         setExtendedState(java.awt.Frame.MAXIMIZED_BOTH);
         setVisible(true);
 
-        Timer timer = new Timer(15, e -> {
-            canvas.update();
-        });
-        timer.start();
+        canvas.start();
     }
 
     private void toggleMode() {
         canvas.toggleExplorerMode();
+        updateModeButtons();
+    }
 
+    private void updateModeButtons() {
         boolean explorerMode = canvas.isExplorerMode();
         particleByDistanceButton.setEnabled(!explorerMode);
         particleByDistanceButton.setVisible(!explorerMode);
@@ -85,6 +222,7 @@ class ParticleSimulator extends JFrame implements KeyListener {
         particleByAngleButton.setVisible(!explorerMode);
         particleByVelocityButton.setEnabled(!explorerMode);
         particleByVelocityButton.setVisible(!explorerMode);
+        removeRegionButton.setEnabled(!explorerMode && canvas.isHeapStorage());
     }
 
     @Override
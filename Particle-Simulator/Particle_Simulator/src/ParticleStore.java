@@ -0,0 +1,271 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Structure-of-arrays particle storage. Positions and velocity components live in
+ * parallel primitive arrays so the physics step and the renderers walk contiguous
+ * memory instead of chasing one object per particle.
+ *
+ * Particles bounce inside a world of {@link #WIDTH} x {@link #HEIGHT} units,
+ * set once per run with -Dworld.width and -Dworld.height. It defaults to the
+ * 1280 x 720 canvas; larger worlds are seen through a {@link Viewport}.
+ *
+ * Order doesn't matter, so {@link #remove(int)} fills the gap with the last
+ * particle and costs O(1). Code holding on to particles across such moves uses
+ * handles (see {@link ParticleHandles}), which the simulation's store keeps in
+ * step with every move; scratch stores just carry the {@link #handle} column along.
+ */
+class ParticleStore {
+    static final int WIDTH = Math.max(1, Integer.getInteger("world.width", 1280));
+    static final int HEIGHT = Math.max(1, Integer.getInteger("world.height", 720));
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    double[] x;
+    double[] y;
+    double[] vx;
+    double[] vy;
+    // per particle: its slot in the handle table, moved along with the particle
+    int[] handle;
+    private int size;
+    // null for scratch stores (spawn batches, shard handoffs), which never hand out handles
+    private final ParticleHandles handles;
+
+    ParticleStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    ParticleStore(int capacity) {
+        this(capacity, null);
+    }
+
+    private ParticleStore(int capacity, ParticleHandles handles) {
+        capacity = Math.max(capacity, 1);
+        x = new double[capacity];
+        y = new double[capacity];
+        vx = new double[capacity];
+        vy = new double[capacity];
+        handle = new int[capacity];
+        this.handles = handles;
+    }
+
+    /** A store that gives every particle a stable handle. */
+    static ParticleStore withHandles() {
+        return new ParticleStore(INITIAL_CAPACITY, new ParticleHandles());
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Sets the particle count after the columns were filled directly, e.g. by a bulk read. */
+    void setSize(int n) {
+        ensureCapacity(n);
+        int from = size;
+        size = n;
+        name(from, n);
+    }
+
+    /** Drops every particle but keeps the allocated columns for reuse. */
+    void clear() {
+        size = 0;
+        if (handles != null) {
+            handles.clear();
+        }
+    }
+
+    /** Adds a particle moving at {@code velocity} pixels per second along {@code angle} degrees. */
+    void add(double px, double py, double angle, double velocity) {
+        double radians = Math.toRadians(angle);
+        addComponents(px, py, velocity * Math.cos(radians), velocity * Math.sin(radians));
+    }
+
+    void addComponents(double px, double py, double pvx, double pvy) {
+        if (size == x.length) {
+            ensureCapacity(size + 1);
+        }
+        x[size] = px;
+        y[size] = py;
+        vx[size] = pvx;
+        vy[size] = pvy;
+        if (handles != null) {
+            handle[size] = handles.allocate(size);
+        }
+        size++;
+    }
+
+    /** Appends particle {@code i} of {@code source}, handle included, without naming it anew. */
+    void addFrom(ParticleStore source, int i) {
+        if (size == x.length) {
+            ensureCapacity(size + 1);
+        }
+        x[size] = source.x[i];
+        y[size] = source.y[i];
+        vx[size] = source.vx[i];
+        vy[size] = source.vy[i];
+        handle[size] = source.handle[i];
+        if (handles != null) {
+            handles.moved(handle[size], size);
+        }
+        size++;
+    }
+
+    /** Appends {@code n} particles drawn from {@code distribution}. */
+    void fill(SpawnDistribution distribution, SplittableRandom random, int n) {
+        ensureCapacity(size + n);
+        for (int i = size, end = size + n; i < end; i++) {
+            distribution.sample(random, x, y, vx, vy, i);
+        }
+        size += n;
+        name(size - n, size);
+    }
+
+    /** Appends every particle of {@code other} with one bulk copy per column. */
+    void append(ParticleStore other) {
+        int n = other.size;
+        ensureCapacity(size + n);
+        System.arraycopy(other.x, 0, x, size, n);
+        System.arraycopy(other.y, 0, y, size, n);
+        System.arraycopy(other.vx, 0, vx, size, n);
+        System.arraycopy(other.vy, 0, vy, size, n);
+        size += n;
+        name(size - n, size);
+    }
+
+    /**
+     * Copies particles {@code [from, from + n)} of {@code source}, which may be this
+     * store, over {@code [to, to + n)}, handles included. Only moves particles
+     * that already have handles; the ranges must be within the current size.
+     */
+    void copy(ParticleStore source, int from, int to, int n) {
+        System.arraycopy(source.x, from, x, to, n);
+        System.arraycopy(source.y, from, y, to, n);
+        System.arraycopy(source.vx, from, vx, to, n);
+        System.arraycopy(source.vy, from, vy, to, n);
+        System.arraycopy(source.handle, from, handle, to, n);
+        if (handles != null) {
+            for (int i = to, end = to + n; i < end; i++) {
+                handles.moved(handle[i], i);
+            }
+        }
+    }
+
+    /** Removes particle {@code i} by moving the last particle into its place. */
+    void remove(int i) {
+        int last = --size;
+        if (handles != null) {
+            handles.release(handle[i]);
+        }
+        if (i != last) {
+            copy(this, last, i, 1);
+        }
+    }
+
+    /** Removes the particle {@code handle} names, if it is still there. */
+    boolean remove(long handle) {
+        int i = indexOf(handle);
+        if (i < 0) {
+            return false;
+        }
+        remove(i);
+        return true;
+    }
+
+    /**
+     * Removes every particle inside the rectangle, edges included, and returns how
+     * many. One pass over the store plus O(1) per removal: walking down from the
+     * end means the particle moved into a gap has always been checked already.
+     */
+    int removeInRect(double minX, double minY, double maxX, double maxY) {
+        double[] x = this.x, y = this.y;
+        int removed = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            if (x[i] >= minX && x[i] <= maxX && y[i] >= minY && y[i] <= maxY) {
+                remove(i);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /** Stable handle of particle {@code i}, or {@link ParticleHandles#NONE} in a scratch store. */
+    long handleOf(int i) {
+        return handles == null ? ParticleHandles.NONE : handles.handle(handle[i]);
+    }
+
+    /** Current index of the particle {@code handle} names, or -1 if it was removed. */
+    int indexOf(long handle) {
+        return handles == null ? -1 : handles.indexOf(handle);
+    }
+
+    /** Gives particles {@code [from, to)} fresh handles. */
+    private void name(int from, int to) {
+        if (handles != null) {
+            for (int i = from; i < to; i++) {
+                handle[i] = handles.allocate(i);
+            }
+        }
+    }
+
+    /** Grows the columns so that at least {@code capacity} particles fit without reallocating. */
+    void ensureCapacity(int capacity) {
+        if (capacity <= x.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, x.length + (x.length >> 1));
+        x = Arrays.copyOf(x, newCapacity);
+        y = Arrays.copyOf(y, newCapacity);
+        vx = Arrays.copyOf(vx, newCapacity);
+        vy = Arrays.copyOf(vy, newCapacity);
+        handle = Arrays.copyOf(handle, newCapacity);
+    }
+
+    void step(double deltaTime) {
+        step(0, size, deltaTime);
+    }
+
+    /** Moves particles in {@code [from, to)} and reflects them off the canvas borders. */
+    void step(int from, int to, double deltaTime) {
+        double[] x = this.x, y = this.y, vx = this.vx, vy = this.vy;
+        for (int i = from; i < to; i++) {
+            double nx = x[i] + vx[i] * deltaTime;
+            double ny = y[i] + vy[i] * deltaTime;
+            x[i] = nx;
+            y[i] = ny;
+            vx[i] = reflect(nx, vx[i], WIDTH);
+            vy[i] = reflect(ny, vy[i], HEIGHT);
+        }
+    }
+
+    /**
+     * Velocity along one axis of a particle that has just moved to {@code p} on an
+     * axis {@code size} long: reversed past a wall, but only when heading further
+     * out, so a slow particle past the wall can't get stuck. Every store's step
+     * reflects through this.
+     */
+    static double reflect(double p, double v, double size) {
+        return (p < 0 && v < 0) || (p > size && v > 0) ? -v : v;
+    }
+
+    /**
+     * {@link #step(int, int, double)} that also appends to {@code outside}, from
+     * {@code count} on, the index of every particle whose new x is outside
+     * {@code [lo, hi)}. Returns the new count; {@code outside} must have room for
+     * {@code to - from} more.
+     */
+    int step(int from, int to, double deltaTime, double lo, double hi, int[] outside, int count) {
+        double[] x = this.x, y = this.y, vx = this.vx, vy = this.vy;
+        for (int i = from; i < to; i++) {
+            double nx = x[i] + vx[i] * deltaTime;
+            double ny = y[i] + vy[i] * deltaTime;
+            x[i] = nx;
+            y[i] = ny;
+            vx[i] = reflect(nx, vx[i], WIDTH);
+            vy[i] = reflect(ny, vy[i], HEIGHT);
+            if (nx < lo || nx >= hi) {
+                outside[count++] = i;
+            }
+        }
+        return count;
+    }
+}
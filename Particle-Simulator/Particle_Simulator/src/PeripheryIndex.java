@@ -0,0 +1,92 @@
+/**
+ * Picks out, in ANALYTIC mode, the particles that can be inside the explorer's
+ * periphery without evaluating every particle every frame. All positions are
+ * evaluated once and sorted into a {@link SpatialGrid}. No particle moves along
+ * an axis faster than the fastest velocity component on it, so later the only
+ * particles that can be near the sprite are those indexed within that reach of
+ * it. Only the grid rows and columns of that widened periphery are evaluated.
+ * Once the reach grows past a cell, or the store changes, the index is rebuilt.
+ *
+ * Owned by the simulation thread.
+ */
+class PeripheryIndex {
+    private final SpatialGrid grid = new SpatialGrid(Simulation.WIDTH, Simulation.HEIGHT,
+            2 * (Simulation.PERIPHERY_WIDTH + 1), 2 * (Simulation.PERIPHERY_HEIGHT + 1));
+    // grid slot -> particle index
+    private int[] order = new int[0], cellOf = new int[0];
+    // particles indexed, -1 until built and after the store changed
+    private int count = -1;
+    private double builtAt, epochTime, maxSpeedX, maxSpeedY;
+
+    /** Forgets the index; call whenever particles are added, removed or rewritten. */
+    void invalidate() {
+        count = -1;
+    }
+
+    /**
+     * Writes into {@code outX}/{@code outY} the positions at {@code simTime} of the
+     * particles within the periphery of {@code (sx, sy)}, plus one unit, and
+     * returns how many. {@code particles} holds the state at {@code epochTime};
+     * the outputs need room for all of its particles.
+     */
+    int evaluate(ParticleStore particles, double epochTime, double simTime, double sx, double sy,
+                 ParallelStepper stepper, float[] outX, float[] outY) {
+        int n = particles.size();
+        double age = simTime - builtAt;
+        if (count != n || this.epochTime != epochTime || age < 0
+                || maxSpeedX * age > grid.cellWidth || maxSpeedY * age > grid.cellHeight) {
+            build(particles, epochTime, simTime, stepper, outX, outY);
+            age = 0;
+        }
+        double t = simTime - epochTime;
+        // one unit more than the filter below, for indexed positions rounded to floats
+        double reachX = Simulation.PERIPHERY_WIDTH + 2 + maxSpeedX * age;
+        double reachY = Simulation.PERIPHERY_HEIGHT + 2 + maxSpeedY * age;
+        int c0 = grid.col(sx - reachX), c1 = grid.col(sx + reachX);
+        int r0 = grid.row(sy - reachY), r1 = grid.row(sy + reachY);
+        double[] x = particles.x, y = particles.y, vx = particles.vx, vy = particles.vy;
+        int[] order = this.order;
+        int kept = 0;
+        for (int r = r0; r <= r1; r++) {
+            for (int s = grid.rangeStart(r, c0), end = grid.rangeEnd(r, c1); s < end; s++) {
+                int i = order[s];
+                double px = AnalyticMotion.position(x[i], vx[i], t, Simulation.WIDTH);
+                if (Math.abs(px - sx) > Simulation.PERIPHERY_WIDTH + 1) {
+                    continue;
+                }
+                double py = AnalyticMotion.position(y[i], vy[i], t, Simulation.HEIGHT);
+                if (Math.abs(py - sy) > Simulation.PERIPHERY_HEIGHT + 1) {
+                    continue;
+                }
+                outX[kept] = (float) px;
+                outY[kept] = (float) py;
+                kept++;
+            }
+        }
+        return kept;
+    }
+
+    /** Evaluates every particle at {@code simTime}, using the outputs as scratch, and sorts them into the grid. */
+    private void build(ParticleStore particles, double epochTime, double simTime, ParallelStepper stepper,
+                       float[] scratchX, float[] scratchY) {
+        int n = particles.size();
+        if (order.length < n) {
+            order = new int[n];
+            cellOf = new int[n];
+        }
+        double t = simTime - epochTime;
+        stepper.forEachChunk(n, (from, to) -> AnalyticMotion.evaluate(particles, from, to, t, scratchX, scratchY));
+        grid.sort(scratchX, scratchY, n, order, cellOf);
+        double[] vx = particles.vx, vy = particles.vy;
+        double maxX = 0, maxY = 0;
+        for (int i = 0; i < n; i++) {
+            maxX = Math.max(maxX, Math.abs(vx[i]));
+            maxY = Math.max(maxY, Math.abs(vy[i]));
+        }
+        maxSpeedX = maxX;
+        maxSpeedY = maxY;
+        builtAt = simTime;
+        this.epochTime = epochTime;
+        count = n;
+    }
+}
@@ -0,0 +1,14 @@
+/** JMX view of one {@link FrameMetrics.Phase} over the last reporting interval. */
+public interface PhaseTimerMBean {
+    long getCount();
+
+    double getMeanMs();
+
+    double getP50Ms();
+
+    double getP90Ms();
+
+    double getP99Ms();
+
+    double getMaxMs();
+}
@@ -0,0 +1,263 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Draws particles straight into the {@code int[]} raster of one reused
+ * {@link BufferedImage}. Each particle is a disc stamp captured once from
+ * {@code fillOval}, so the output matches the Java2D path pixel for pixel, but it
+ * is written row by row without going through Java2D per particle.
+ *
+ * {@link #drawDeveloperView} splits the frame into horizontal bands of pixel
+ * rows and looks up the particles that can touch a band in the snapshot's
+ * spatial grid: the grid rows the band overlaps, through the {@link Viewport},
+ * each trimmed to the columns on screen. Bands own disjoint pixel rows, and each
+ * one stamps its particles clipped to its rows, so with a pool the bands
+ * rasterize in parallel into the shared raster without locks. In a world larger
+ * than the screen only the particles in view are ever visited.
+ */
+class RasterRenderer {
+    static final int PARTICLE_COLOR = 0x00FF00;
+    private static final int BANDS_PER_WORKER = 4;
+
+    private final int width, height;
+    private final BufferedImage image;
+    private final int[] pixels;
+    private final int stampSize;
+    // per stamp row: first and last covered column, relative to the stamp's left edge
+    private final int[] spanStart, spanEnd;
+    // snapshot indices found by the last periphery query
+    private int[] visible = new int[256];
+    // world coordinates one to one, for callers without a viewport
+    private final Viewport identity;
+    // null draws every band on the calling thread
+    private final ParallelStepper pool;
+
+    RasterRenderer(int width, int height, int stampSize) {
+        this(width, height, stampSize, null);
+    }
+
+    RasterRenderer(int width, int height, int stampSize, ParallelStepper pool) {
+        this.pool = pool;
+        this.width = width;
+        this.height = height;
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        this.stampSize = stampSize;
+        this.spanStart = new int[stampSize];
+        this.spanEnd = new int[stampSize];
+        this.identity = new Viewport(width, height);
+
+        BufferedImage disc = new BufferedImage(stampSize, stampSize, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = disc.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillOval(0, 0, stampSize, stampSize);
+        g.dispose();
+        for (int row = 0; row < stampSize; row++) {
+            spanStart[row] = stampSize;
+            spanEnd[row] = -1;
+            for (int col = 0; col < stampSize; col++) {
+                if ((disc.getRGB(col, row) & 0xFFFFFF) != 0) {
+                    spanStart[row] = Math.min(spanStart[row], col);
+                    spanEnd[row] = col;
+                }
+            }
+        }
+    }
+
+    BufferedImage getImage() {
+        return image;
+    }
+
+    int[] getPixels() {
+        return pixels;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    void clear(int rgb) {
+        Arrays.fill(pixels, rgb);
+    }
+
+    /** Stamps particles {@code [from, to)} centred on their positions. */
+    void drawParticles(float[] xs, float[] ys, int from, int to, int rgb) {
+        int half = stampSize / 2;
+        for (int i = from; i < to; i++) {
+            stampAt((int) xs[i] - half, (int) ys[i] - half, rgb);
+        }
+    }
+
+    /** Draws the world's top left corner at one pixel per unit. */
+    void drawDeveloperView(FrameSnapshot snapshot, int background, int rgb) {
+        drawDeveloperView(snapshot, identity, background, rgb);
+    }
+
+    /**
+     * Stamps the first {@code count} positions of buffers that live outside the
+     * heap, such as a {@link SharedFrameRing} slot, scaled by {@code zoom}, without
+     * copying them out first.
+     */
+    void drawParticles(FloatBuffer xs, FloatBuffer ys, int count, double zoom, int rgb) {
+        int half = stampSize / 2;
+        for (int i = 0; i < count; i++) {
+            stampAt((int) (xs.get(i) * zoom) - half, (int) (ys.get(i) * zoom) - half, rgb);
+        }
+    }
+
+    /** Fills the frame with {@code background} and stamps every particle of {@code snapshot} in {@code view}, band by band. */
+    void drawDeveloperView(FrameSnapshot snapshot, Viewport view, int background, int rgb) {
+        // a few bands per worker for balance; stamps crossing a band edge are drawn by both bands
+        int bands = pool == null ? 1 : Math.min(height, pool.getWorkers() * BANDS_PER_WORKER);
+        int rowsPerBand = (height + bands - 1) / bands;
+        int bandCount = (height + rowsPerBand - 1) / rowsPerBand;
+        ParallelStepper.RangeTask task = (b0, b1) -> {
+            for (int b = b0; b < b1; b++) {
+                drawBand(snapshot, view, b * rowsPerBand, Math.min(height, (b + 1) * rowsPerBand), background, rgb);
+            }
+        };
+        if (pool == null) {
+            task.run(0, bandCount);
+        } else {
+            pool.forEachChunk(bandCount, 1, task);
+        }
+    }
+
+    /** Clears pixel rows {@code [y0, y1)} and stamps the particles that reach into them. */
+    private void drawBand(FrameSnapshot snapshot, Viewport view, int y0, int y1, int background, int rgb) {
+        Arrays.fill(pixels, y0 * width, y1 * width, background);
+        SpatialGrid grid = snapshot.grid;
+        double viewLeft = view.getLeft(), viewTop = view.getTop(), zoom = view.getZoom();
+        // every cell a stamp can reach these rows from, a stamp's size beyond the screen edges
+        int r0 = grid.row(view.worldY(y0 - stampSize)), r1 = grid.row(view.worldY(y1 + stampSize));
+        int c0 = grid.col(view.worldX(-stampSize)), c1 = grid.col(view.worldX(width + stampSize));
+        int half = stampSize / 2;
+        float[] xs = snapshot.x, ys = snapshot.y;
+        for (int r = r0; r <= r1; r++) {
+            for (int i = grid.rangeStart(r, c0), end = grid.rangeEnd(r, c1); i < end; i++) {
+                int top = (int) ((ys[i] - viewTop) * zoom) - half;
+                if (top >= y1 || top + stampSize <= y0) {
+                    continue;
+                }
+                int left = (int) ((xs[i] - viewLeft) * zoom) - half;
+                if (top >= y0 && top + stampSize <= y1 && left >= 0 && left <= width - stampSize) {
+                    stamp(left, top, rgb);
+                } else {
+                    stampRows(left, top, rgb, y0, y1);
+                }
+            }
+        }
+    }
+
+    /** Stamps only the rows of the disc that fall inside pixel rows {@code [y0, y1)}. */
+    private void stampRows(int left, int top, int rgb, int y0, int y1) {
+        if (left <= -stampSize || left >= width) {
+            return;
+        }
+        int[] pixels = this.pixels;
+        int first = Math.max(0, y0 - top), last = Math.min(stampSize, y1 - top);
+        boolean inside = left >= 0 && left <= width - stampSize;
+        for (int row = first; row < last; row++) {
+            int rowOffset = (top + row) * width;
+            int x0 = left + spanStart[row], x1 = left + spanEnd[row];
+            if (!inside) {
+                x0 = Math.max(0, x0);
+                x1 = Math.min(width - 1, x1);
+            }
+            for (int p = rowOffset + x0, end = rowOffset + x1; p <= end; p++) {
+                pixels[p] = rgb;
+            }
+        }
+    }
+
+    /**
+     * Draws the explorer's zoomed periphery view the same way the Java2D explorer
+     * path does, visiting only the grid cells around the sprite.
+     *
+     * @return number of particles drawn
+     */
+    int drawExplorerView(FrameSnapshot snapshot, int rgb) {
+        int count = queryPeriphery(snapshot);
+        drawPeriphery(snapshot, count, rgb);
+        return count;
+    }
+
+    /** Finds the particles inside the explorer periphery and returns how many there are. */
+    int queryPeriphery(FrameSnapshot snapshot) {
+        int pw = Simulation.PERIPHERY_WIDTH, ph = Simulation.PERIPHERY_HEIGHT;
+        double sx = snapshot.spriteX, sy = snapshot.spriteY;
+        float[] xs = snapshot.x, ys = snapshot.y;
+        SpatialGrid grid = snapshot.grid;
+        int c0 = grid.col(sx - pw - 1), c1 = grid.col(sx + pw + 1);
+        int r0 = grid.row(sy - ph - 1), r1 = grid.row(sy + ph + 1);
+        int count = 0;
+        for (int r = r0; r <= r1; r++) {
+            int start = grid.rangeStart(r, c0), end = grid.rangeEnd(r, c1);
+            if (visible.length < count + end - start) {
+                visible = Arrays.copyOf(visible, Math.max(count + end - start, visible.length * 2));
+            }
+            for (int i = start; i < end; i++) {
+                int dx = (int) (xs[i] - sx);
+                int dy = (int) (ys[i] - sy);
+                if (Math.abs(dx) > pw || Math.abs(dy) > ph) {
+                    continue;
+                }
+                visible[count++] = i;
+            }
+        }
+        return count;
+    }
+
+    /** Stamps the first {@code count} particles found by the last {@link #queryPeriphery}. */
+    void drawPeriphery(FrameSnapshot snapshot, int count, int rgb) {
+        int scaleX = width / Simulation.PERIPHERY_WIDTH, scaleY = height / Simulation.PERIPHERY_HEIGHT;
+        double sx = snapshot.spriteX, sy = snapshot.spriteY;
+        float[] xs = snapshot.x, ys = snapshot.y;
+        int[] visible = this.visible;
+        for (int k = 0; k < count; k++) {
+            int i = visible[k];
+            stampAt((int) (xs[i] - sx) * scaleX, (int) (ys[i] - sy) * scaleY, rgb);
+        }
+    }
+
+    private void stampAt(int left, int top, int rgb) {
+        if (left >= 0 && top >= 0 && left <= width - stampSize && top <= height - stampSize) {
+            stamp(left, top, rgb);
+        } else if (left > -stampSize && top > -stampSize && left < width && top < height) {
+            stampClipped(left, top, rgb);
+        }
+    }
+
+    private void stamp(int left, int top, int rgb) {
+        int[] pixels = this.pixels;
+        int rowOffset = top * width + left;
+        for (int row = 0; row < stampSize; row++, rowOffset += width) {
+            for (int p = rowOffset + spanStart[row], end = rowOffset + spanEnd[row]; p <= end; p++) {
+                pixels[p] = rgb;
+            }
+        }
+    }
+
+    private void stampClipped(int left, int top, int rgb) {
+        for (int row = 0; row < stampSize; row++) {
+            int py = top + row;
+            if (py < 0 || py >= height) {
+                continue;
+            }
+            int x0 = Math.max(0, left + spanStart[row]);
+            int x1 = Math.min(width - 1, left + spanEnd[row]);
+            int rowOffset = py * width;
+            for (int px = x0; px <= x1; px++) {
+                pixels[rowOffset + px] = rgb;
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Versioned binary scene format, read and written through memory-mapped
+ * {@link FileChannel} regions so each particle column is one bulk copy between
+ * the page cache and the store's arrays.
+ *
+ * Layout, little-endian:
+ * <pre>
+ *   int    magic 'PSIM'
+ *   int    version
+ *   int    particle count n
+ *   int    flags (bit 0 explorer mode, bit 1 explorer spawned, bit 2 analytic motion)
+ *   double sprite x, sprite y
+ *   double simulation time
+ *   long   tick
+ *   double[n] x, double[n] y, double[n] vx, double[n] vy
+ * </pre>
+ * Every column is mapped on its own, so scenes past the 2 GB limit of a single
+ * mapping still work. Heap and off-heap stores read and write the same format.
+ */
+final class SceneFile {
+    static final int MAGIC = 0x5053494D; // "PSIM"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 4 * 4 + 3 * 8 + 8;
+
+    static final int FLAG_EXPLORER_MODE = 1;
+    static final int FLAG_EXPLORER_SPAWNED = 1 << 1;
+    static final int FLAG_ANALYTIC = 1 << 2;
+
+    /** Everything in a scene besides the particle columns. */
+    static final class Header {
+        int count;
+        int flags;
+        double spriteX, spriteY;
+        double simTime;
+        long tick;
+    }
+
+    /** Copies column {@code column} (x, y, vx, vy) of a store into its mapped region. */
+    private interface ColumnWriter {
+        void write(int column, DoubleBuffer file);
+    }
+
+    /** Replaces a store's particles with the {@code n} in the mapped {@code columns}. */
+    private interface SceneLoader {
+        void load(int n, DoubleBuffer[] columns);
+    }
+
+    private SceneFile() {}
+
+    static void write(Path path, Header header, ParticleStore store) throws IOException {
+        int n = store.size();
+        double[][] columns = {store.x, store.y, store.vx, store.vy};
+        write(path, header, n, (c, file) -> file.put(columns[c], 0, n));
+    }
+
+    static void write(Path path, Header header, OffHeapParticles particles) throws IOException {
+        write(path, header, particles.size(), particles::readColumn);
+    }
+
+    private static void write(Path path, Header header, int n, ColumnWriter writer) throws IOException {
+        long columnBytes = (long) n * Double.BYTES;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            head.order(ByteOrder.LITTLE_ENDIAN)
+                    .putInt(MAGIC).putInt(VERSION).putInt(n).putInt(header.flags)
+                    .putDouble(header.spriteX).putDouble(header.spriteY)
+                    .putDouble(header.simTime).putLong(header.tick);
+            head.force();
+
+            for (int c = 0; c < 4 && n > 0; c++) {
+                MappedByteBuffer column = channel.map(FileChannel.MapMode.READ_WRITE,
+                        HEADER_BYTES + c * columnBytes, columnBytes);
+                writer.write(c, column.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer());
+                column.force();
+            }
+        }
+    }
+
+    /** Reads a scene into {@code store}, replacing its contents, and returns the header. */
+    static Header read(Path path, ParticleStore store) throws IOException {
+        return read(path, (n, columns) -> {
+            store.clear();
+            store.ensureCapacity(n);
+            double[][] arrays = {store.x, store.y, store.vx, store.vy};
+            for (int c = 0; c < arrays.length; c++) {
+                columns[c].get(arrays[c], 0, n);
+            }
+            store.setSize(n);
+        });
+    }
+
+    /** Same, into an off-heap store. */
+    static Header read(Path path, OffHeapParticles particles) throws IOException {
+        return read(path, particles::load);
+    }
+
+    private static Header read(Path path, SceneLoader loader) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not a scene file: " + path);
+            }
+            ByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (head.getInt() != MAGIC) {
+                throw new IOException("Not a scene file: " + path);
+            }
+            int version = head.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported scene version " + version + " in " + path);
+            }
+            Header header = new Header();
+            header.count = head.getInt();
+            header.flags = head.getInt();
+            header.spriteX = head.getDouble();
+            header.spriteY = head.getDouble();
+            header.simTime = head.getDouble();
+            header.tick = head.getLong();
+
+            int n = header.count;
+            long columnBytes = (long) n * Double.BYTES;
+            if (n < 0 || channel.size() < HEADER_BYTES + 4 * columnBytes) {
+                throw new IOException("Truncated scene file: " + path);
+            }
+            DoubleBuffer[] columns = new DoubleBuffer[4];
+            for (int c = 0; c < columns.length; c++) {
+                columns[c] = n == 0 ? DoubleBuffer.allocate(0) : channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_BYTES + c * columnBytes, columnBytes).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            }
+            loader.load(n, columns);
+            return header;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * {@link ColumnMemory} on the incubating foreign memory API. Every column is a
+ * native segment of one scope, used through a ByteBuffer view of it, and
+ * {@link #close} frees them all before it returns instead of waiting for a
+ * collection. The scope is shared because the physics workers use the columns
+ * too; a view touched after the close throws instead of reading freed memory.
+ *
+ * Only ever instantiated through {@link ColumnMemory#open()}.
+ */
+final class SegmentColumnMemory implements ColumnMemory {
+    // a cache line, like direct buffers in practice
+    private static final long ALIGNMENT = 64;
+
+    private final ResourceScope scope = ResourceScope.newSharedScope();
+
+    @Override
+    public ByteBuffer allocate(int bytes) {
+        return MemorySegment.allocateNative(bytes, ALIGNMENT, scope).asByteBuffer().order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    public void close() {
+        scope.close();
+    }
+
+    @Override
+    public String name() {
+        return "segments";
+    }
+}
@@ -0,0 +1,345 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+
+/**
+ * A ring of frame slots in a memory-mapped file, written by the simulation and
+ * read by other processes such as {@link SharedFrameViewer}. Little-endian.
+ *
+ * <pre>
+ *   header, 128 bytes
+ *     int    MAGIC, int VERSION
+ *     int    slot count, int slot capacity in particles
+ *     int    world width, int world height
+ *     long   latest: newest complete frame &lt;&lt; 8 | its slot, -1 before the first
+ *     long   session: random per writer, changes when the file is re-created
+ *     long   writer System.currentTimeMillis() at the last publish
+ *     ...    padding to 64
+ *     long[MAX_READERS] reader pins: currentTimeMillis() &lt;&lt; 8 | (pinned slot + 1), or 0 if unclaimed
+ *   slot, 64 bytes then capacity floats of x and capacity floats of y
+ *     long   seq: 2 * frame + 1 while frame is being written, 2 * frame + 2 once complete
+ *     long   tick, double simTime
+ *     int    count stored, int count simulated (more than stored if over capacity)
+ *     int    flags, double sprite x, double sprite y
+ * </pre>
+ *
+ * The writer never waits: it marks a slot odd, copies the positions in, marks
+ * it even and then points {@code latest} at it. A reader works on the slot in
+ * place and afterwards checks the slot's seq is still the one it started with,
+ * like a seqlock; if not, it drops what it read and takes the newest frame again.
+ *
+ * So that a slow reader still finishes a frame, it pins the slot it is reading
+ * in its pin field, and the writer picks the next slot that is neither the
+ * latest nor pinned. Pins are hints only: a pin older than
+ * {@link #PIN_TIMEOUT_MILLIS}, e.g. from a reader that died, is ignored. If
+ * every slot is pinned, the writer overwrites one anyway and the seq check
+ * catches it. With at least {@code MAX_READERS + 2} slots that never happens.
+ *
+ * Configured with -Dsim.share=file (e.g. /dev/shm/particles.frames),
+ * -Dsim.share.slots (default 6) and -Dsim.share.capacity (default 1000000).
+ */
+class SharedFrameRing {
+    static final int MAGIC = 0x50534652; // "PSFR"
+    static final int VERSION = 1;
+    static final int DEFAULT_SLOTS = 6;
+    static final int MAX_READERS = 4;
+    static final long PIN_TIMEOUT_MILLIS = 1000;
+    static final int DEFAULT_CAPACITY = 1_000_000;
+    static final int FLAG_EXPLORER_MODE = 1;
+    static final int FLAG_EXPLORER_SPAWNED = 2;
+
+    private static final int HEADER_BYTES = 128;
+    private static final int SLOT_HEADER_BYTES = 64;
+    // the pins get a cache line of their own, apart from the writer's fields
+    private static final int LATEST = 24, SESSION = 32, HEARTBEAT = 40, PINS = 64;
+    private static final int SEQ = 0, TICK = 8, SIM_TIME = 16, COUNT = 24, TOTAL = 28, FLAGS = 32,
+            SPRITE_X = 40, SPRITE_Y = 48;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final MappedByteBuffer buffer;
+    private final int slots, capacity;
+    private final long slotBytes;
+    private final int worldWidth, worldHeight;
+    private final long session;
+    private final FloatBuffer[] xs, ys;
+    // writer side
+    private long nextFrame;
+    private int lastSlot = -1;
+
+    private SharedFrameRing(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Not a version " + VERSION + " frame ring");
+        }
+        slots = buffer.getInt(8);
+        capacity = buffer.getInt(12);
+        worldWidth = buffer.getInt(16);
+        worldHeight = buffer.getInt(20);
+        session = buffer.getLong(SESSION);
+        slotBytes = slotBytes(capacity);
+        if (buffer.capacity() < HEADER_BYTES + slots * slotBytes) {
+            throw new IllegalArgumentException("Frame ring file is truncated");
+        }
+        xs = new FloatBuffer[slots];
+        ys = new FloatBuffer[slots];
+        for (int s = 0; s < slots; s++) {
+            int data = slotOffset(s) + SLOT_HEADER_BYTES;
+            xs[s] = buffer.slice(data, capacity * 4).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            ys[s] = buffer.slice(data + capacity * 4, capacity * 4).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        }
+    }
+
+    /** The configured ring, created fresh, or null if -Dsim.share isn't set. */
+    static SharedFrameRing fromSystemProperties() throws IOException {
+        String path = System.getProperty("sim.share");
+        if (path == null) {
+            return null;
+        }
+        return create(Path.of(path), Integer.getInteger("sim.share.slots", DEFAULT_SLOTS),
+                Integer.getInteger("sim.share.capacity", DEFAULT_CAPACITY));
+    }
+
+    /**
+     * Writer side: lays out a new ring and moves it over {@code path}. Readers
+     * still mapping a previous file keep it until they notice the new session.
+     */
+    static SharedFrameRing create(Path path, int slots, int capacity) throws IOException {
+        if (slots < 2 || slots > 255 || capacity < 1 || HEADER_BYTES + slots * slotBytes(capacity) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Unsupported frame ring of " + slots + " x " + capacity);
+        }
+        long size = HEADER_BYTES + slots * slotBytes(capacity);
+        Path parent = path.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, slots).putInt(12, capacity)
+                .putInt(16, Simulation.WIDTH).putInt(20, Simulation.HEIGHT)
+                .putLong(LATEST, -1).putLong(SESSION, new SplittableRandom().nextLong());
+        // the file is all zeros otherwise, so every slot reads as never written
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new SharedFrameRing(buffer);
+    }
+
+    /** Reader side: maps an existing ring; writable, but only for the reader pins. */
+    static SharedFrameRing open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new SharedFrameRing(channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+        }
+    }
+
+    /** Session of the writer that created the file at {@code path}, or 0 if there is none yet. */
+    static long sessionOf(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            return header.getInt(0) == MAGIC ? header.getLong(SESSION) : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    int getSlots() {
+        return slots;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int getWorldWidth() {
+        return worldWidth;
+    }
+
+    int getWorldHeight() {
+        return worldHeight;
+    }
+
+    long getSession() {
+        return session;
+    }
+
+    /**
+     * Writer side: copies {@code frame} into the next slot and makes it the
+     * latest. Positions past the capacity are left out; the slot records how
+     * many there were.
+     */
+    void publish(FrameSnapshot frame) {
+        long now = System.currentTimeMillis();
+        long f = nextFrame++;
+        int s = nextSlot(now);
+        int slot = slotOffset(s);
+        int count = Math.min(frame.count, capacity);
+        LONGS.setOpaque(buffer, slot + SEQ, 2 * f + 1);
+        // readers must see the odd seq before any of the new positions
+        VarHandle.storeStoreFence();
+        buffer.putLong(slot + TICK, frame.tick);
+        buffer.putDouble(slot + SIM_TIME, frame.simTime);
+        buffer.putInt(slot + COUNT, count);
+        buffer.putInt(slot + TOTAL, frame.count);
+        buffer.putInt(slot + FLAGS, (frame.explorerMode ? FLAG_EXPLORER_MODE : 0)
+                | (frame.explorerSpawned ? FLAG_EXPLORER_SPAWNED : 0));
+        buffer.putDouble(slot + SPRITE_X, frame.spriteX);
+        buffer.putDouble(slot + SPRITE_Y, frame.spriteY);
+        xs[s].put(0, frame.x, 0, count);
+        ys[s].put(0, frame.y, 0, count);
+        LONGS.setRelease(buffer, slot + SEQ, 2 * f + 2);
+        LONGS.setRelease(buffer, LATEST, f << 8 | s);
+        buffer.putLong(HEARTBEAT, now);
+        lastSlot = s;
+    }
+
+    /** The slot after the last one written that is neither the latest frame's nor pinned by a live reader. */
+    private int nextSlot(long now) {
+        for (int k = 1; k < slots; k++) {
+            int s = (lastSlot + k + slots) % slots;
+            if (!isPinned(s, now)) {
+                return s;
+            }
+        }
+        return (lastSlot + 1) % slots;
+    }
+
+    private boolean isPinned(int slot, long now) {
+        for (int r = 0; r < MAX_READERS; r++) {
+            long pin = (long) LONGS.getAcquire(buffer, PINS + 8 * r);
+            if ((pin & 0xFF) == slot + 1 && now - (pin >>> 8) < PIN_TIMEOUT_MILLIS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reader side: takes one of the {@link #MAX_READERS} pin fields for this
+     * reader, or returns -1 if live readers hold them all; such a reader still
+     * works, its frames just aren't protected from being overwritten.
+     */
+    int claimReader() {
+        long now = System.currentTimeMillis();
+        for (int r = 0; r < MAX_READERS; r++) {
+            long pin = (long) LONGS.getVolatile(buffer, PINS + 8 * r);
+            if ((pin == 0 || now - (pin >>> 8) >= PIN_TIMEOUT_MILLIS)
+                    && LONGS.compareAndSet(buffer, PINS + 8 * r, pin, now << 8)) {
+                return r;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reader side: pins the newest complete frame for {@code reader} and returns
+     * it as {@code frame << 8 | slot} (see {@link #frameOf}, {@link #slotOf}), or
+     * -1 if none has been published. Read it, check {@link #stillValid}, then
+     * {@link #unpin}.
+     */
+    long pinLatest(int reader) {
+        for (int attempt = 0; attempt < slots; attempt++) {
+            long latest = (long) LONGS.getAcquire(buffer, LATEST);
+            if (latest < 0) {
+                return -1;
+            }
+            int slot = slotOf(latest);
+            if (reader >= 0) {
+                LONGS.setVolatile(buffer, PINS + 8 * reader, System.currentTimeMillis() << 8 | (slot + 1));
+            }
+            // the writer may have chosen this slot before our pin landed; then it is already changing
+            if ((long) LONGS.getVolatile(buffer, slotOffset(slot) + SEQ) == 2 * frameOf(latest) + 2) {
+                return latest;
+            }
+        }
+        return -1;
+    }
+
+    /** Reader side: lets the writer have the pinned slot again, keeping the claim on the pin field. */
+    void unpin(int reader) {
+        if (reader >= 0) {
+            LONGS.setRelease(buffer, PINS + 8 * reader, System.currentTimeMillis() << 8);
+        }
+    }
+
+    static long frameOf(long pinned) {
+        return pinned >>> 8;
+    }
+
+    static int slotOf(long pinned) {
+        return (int) (pinned & 0xFF);
+    }
+
+    /** Reader side: when the writer last published, in System.currentTimeMillis() time. */
+    long heartbeat() {
+        return buffer.getLong(HEARTBEAT);
+    }
+
+    /**
+     * Reader side: whether {@code frame} was still intact in its slot through
+     * every read made since {@link #pinLatest}. If not, those reads may have mixed
+     * two frames and should be discarded.
+     */
+    boolean stillValid(int slot, long frame) {
+        // keeps the reads of the slot from moving below the seq check
+        VarHandle.loadLoadFence();
+        return (long) LONGS.getVolatile(buffer, slotOffset(slot) + SEQ) == 2 * frame + 2;
+    }
+
+    long tick(int slot) {
+        return buffer.getLong(slotOffset(slot) + TICK);
+    }
+
+    double simTime(int slot) {
+        return buffer.getDouble(slotOffset(slot) + SIM_TIME);
+    }
+
+    /** Positions stored in the slot; never more than the capacity, even mid-write. */
+    int count(int slot) {
+        return Math.max(0, Math.min(capacity, buffer.getInt(slotOffset(slot) + COUNT)));
+    }
+
+    /** Particles the simulation had, including any beyond the capacity. */
+    int total(int slot) {
+        return buffer.getInt(slotOffset(slot) + TOTAL);
+    }
+
+    int flags(int slot) {
+        return buffer.getInt(slotOffset(slot) + FLAGS);
+    }
+
+    double spriteX(int slot) {
+        return buffer.getDouble(slotOffset(slot) + SPRITE_X);
+    }
+
+    double spriteY(int slot) {
+        return buffer.getDouble(slotOffset(slot) + SPRITE_Y);
+    }
+
+    /** The slot's x positions in place; index them absolutely. */
+    FloatBuffer xs(int slot) {
+        return xs[slot];
+    }
+
+    FloatBuffer ys(int slot) {
+        return ys[slot];
+    }
+
+    private int slotOffset(int slot) {
+        return (int) (HEADER_BYTES + slot * slotBytes);
+    }
+
+    private static long slotBytes(int capacity) {
+        // whole cache lines, so slots never share one
+        return (SLOT_HEADER_BYTES + 8L * capacity + 63) & ~63L;
+    }
+}
@@ -0,0 +1,209 @@
+import javax.swing.*;
+import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A separate process that shows the simulation's frames from a
+ * {@link SharedFrameRing}. It renders the newest complete frame straight out of
+ * the mapped file, so the simulator never waits for it: a slow viewer just
+ * skips frames, and the simulator doesn't notice whether one is attached at all.
+ * While rendering, the viewer pins its slot so the simulator writes elsewhere.
+ * The viewer can start before the simulator and picks up a restarted one.
+ *
+ * {@code java SharedFrameViewer file=/dev/shm/particles.frames}, with the simulator
+ * started with -Dsim.share=/dev/shm/particles.frames.
+ *
+ *   file      the ring file (default /dev/shm/particles.frames)
+ *   hz        frames rendered per second at most (default 60)
+ *   headless  true renders offscreen for {@code seconds} and prints one JSON line of stats (default false)
+ *   seconds   how long a headless run lasts (default 10)
+ *   slowMs    extra time spent per frame, to see how a slow viewer behaves (default 0)
+ */
+class SharedFrameViewer {
+    static final String DEFAULT_FILE = "/dev/shm/particles.frames";
+    // a frame overwritten while it was being read is retried this often before waiting for the next tick
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long REATTACH_MILLIS = 1000;
+
+    private final Path path;
+    // front is on screen; frames are drawn into back and swapped in only once known to be complete
+    private RasterRenderer front = new RasterRenderer(Viewport.SCREEN_WIDTH, Viewport.SCREEN_HEIGHT, 10);
+    private RasterRenderer back = new RasterRenderer(Viewport.SCREEN_WIDTH, Viewport.SCREEN_HEIGHT, 10);
+    private SharedFrameRing ring;
+    // pin field in the ring, -1 if all were taken
+    private int reader = -1;
+    private long lastAttachCheck;
+    private long shown = -1;
+    private long framesShown, framesSkipped, framesTorn, renderNanos;
+    private long tick;
+    private int total;
+
+    SharedFrameViewer(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Renders the newest complete frame if it is newer than the one on screen. A
+     * frame overwritten while it was drawn never reaches the screen.
+     *
+     * @return true if the image changed
+     */
+    boolean renderLatest() {
+        attach();
+        if (ring == null) {
+            return false;
+        }
+        long start = System.nanoTime();
+        RasterRenderer renderer = back;
+        double zoom = Math.min(1, Math.min((double) renderer.getWidth() / ring.getWorldWidth(),
+                (double) renderer.getHeight() / ring.getWorldHeight()));
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            long pinned = ring.pinLatest(reader);
+            long frame = SharedFrameRing.frameOf(pinned);
+            if (pinned < 0 || frame == shown) {
+                ring.unpin(reader);
+                return false;
+            }
+            int slot = SharedFrameRing.slotOf(pinned);
+            renderer.clear(0);
+            renderer.drawParticles(ring.xs(slot), ring.ys(slot), ring.count(slot), zoom, RasterRenderer.PARTICLE_COLOR);
+            long frameTick = ring.tick(slot);
+            int frameTotal = ring.total(slot);
+            boolean valid = ring.stillValid(slot, frame);
+            ring.unpin(reader);
+            if (!valid) {
+                framesTorn++;
+                continue;
+            }
+            if (shown >= 0 && frame > shown) {
+                framesSkipped += frame - shown - 1;
+            }
+            back = front;
+            front = renderer;
+            shown = frame;
+            tick = frameTick;
+            total = frameTotal;
+            framesShown++;
+            renderNanos += System.nanoTime() - start;
+            return true;
+        }
+        return false;
+    }
+
+    /** Maps the file once it exists, and again whenever a new simulator has replaced it. */
+    private void attach() {
+        long now = System.currentTimeMillis();
+        if (now - lastAttachCheck < REATTACH_MILLIS) {
+            return;
+        }
+        lastAttachCheck = now;
+        if (ring != null && now - ring.heartbeat() < REATTACH_MILLIS) {
+            return;
+        }
+        long session = SharedFrameRing.sessionOf(path);
+        if (session == 0 || (ring != null && session == ring.getSession())) {
+            return;
+        }
+        try {
+            ring = SharedFrameRing.open(path);
+            reader = ring.claimReader();
+            shown = -1;
+        } catch (IOException | IllegalArgumentException e) {
+            // half-written or foreign file; try again later
+            ring = null;
+        }
+    }
+
+    /** Whether a simulator has published within the last second. */
+    boolean isWriterLive() {
+        return ring != null && System.currentTimeMillis() - ring.heartbeat() < REATTACH_MILLIS;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = HeadlessBenchmark.parseArgs(args);
+        Path path = Path.of(options.getOrDefault("file", DEFAULT_FILE));
+        int hz = Math.max(1, Integer.parseInt(options.getOrDefault("hz", "60")));
+        long slowMs = Long.parseLong(options.getOrDefault("slowMs", "0"));
+        if (Boolean.parseBoolean(options.getOrDefault("headless", "false"))) {
+            System.setProperty("java.awt.headless", "true");
+            runHeadless(new SharedFrameViewer(path), hz, slowMs, Double.parseDouble(options.getOrDefault("seconds", "10")));
+        } else {
+            SwingUtilities.invokeLater(() -> showWindow(new SharedFrameViewer(path), hz, slowMs));
+        }
+    }
+
+    private static void runHeadless(SharedFrameViewer viewer, int hz, long slowMs, double seconds)
+            throws InterruptedException {
+        long period = 1_000_000_000L / hz;
+        long start = System.nanoTime(), end = start + (long) (seconds * 1e9);
+        for (long next = start; next < end; next += period) {
+            if (viewer.renderLatest()) {
+                if (slowMs > 0) {
+                    Thread.sleep(slowMs);
+                }
+            }
+            long wait = next + period - System.nanoTime();
+            if (wait > 0) {
+                Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        StringBuilder json = new StringBuilder("{");
+        HeadlessBenchmark.field(json, "attached", viewer.ring != null);
+        HeadlessBenchmark.field(json, "seconds", elapsed);
+        HeadlessBenchmark.field(json, "framesShown", viewer.framesShown);
+        HeadlessBenchmark.field(json, "framesSkipped", viewer.framesSkipped);
+        HeadlessBenchmark.field(json, "framesTorn", viewer.framesTorn);
+        HeadlessBenchmark.field(json, "fps", viewer.framesShown / elapsed);
+        HeadlessBenchmark.field(json, "renderMsMean", viewer.framesShown == 0 ? 0 : viewer.renderNanos / 1e6 / viewer.framesShown);
+        HeadlessBenchmark.field(json, "lastTick", viewer.tick);
+        HeadlessBenchmark.field(json, "particles", viewer.total);
+        json.setLength(json.length() - 1);
+        System.out.println(json.append('}'));
+    }
+
+    private static void showWindow(SharedFrameViewer viewer, int hz, long slowMs) {
+        JFrame frame = new JFrame("Shared frame viewer");
+        JPanel panel = new JPanel() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                g.drawImage(viewer.front.getImage(), 0, 0, this);
+            }
+        };
+        panel.setPreferredSize(new Dimension(viewer.front.getWidth(), viewer.front.getHeight()));
+        frame.add(panel);
+        frame.pack();
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setVisible(true);
+
+        long[] titleAt = {System.nanoTime(), 0};
+        Timer timer = new Timer(1000 / hz, e -> {
+            if (viewer.renderLatest()) {
+                panel.repaint();
+                if (slowMs > 0) {
+                    try {
+                        Thread.sleep(slowMs);
+                    } catch (InterruptedException ignored) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+            long now = System.nanoTime();
+            if (now - titleAt[0] >= 500_000_000L) {
+                double fps = (viewer.framesShown - titleAt[1]) * 1e9 / (now - titleAt[0]);
+                titleAt[0] = now;
+                titleAt[1] = viewer.framesShown;
+                frame.setTitle(viewer.isWriterLive()
+                        ? String.format(Locale.ROOT, "Shared frame viewer | FPS: %.0f | tick %d | %d particles | skipped %d",
+                                fps, viewer.tick, viewer.total, viewer.framesSkipped)
+                        : "Shared frame viewer | waiting for " + viewer.path);
+            }
+        });
+        timer.setCoalesce(true);
+        timer.start();
+    }
+}
@@ -0,0 +1,577 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Simulation state owned by a single thread. Other threads never touch the
+ * particles directly: they {@link #submit} commands that are drained in one batch
+ * at the start of the next tick, and read positions from the published
+ * {@link FrameSnapshot}s. Neither side takes a lock.
+ *
+ * The particles live in a {@link ParticleStore} on the heap, or with
+ * -Dsim.storage=offheap|offheap32 in an {@link OffHeapParticles} store, so a big
+ * scene leaves the collector almost nothing to scan. Off-heap storage runs
+ * integrated motion with the scalar step, in one block rather than in shards.
+ * Analytic motion, collisions, lifetimes, removal and explorer agents need the
+ * heap store, and asking for them throws UnsupportedOperationException.
+ */
+class Simulation {
+    static final int WIDTH = ParticleStore.WIDTH;
+    static final int HEIGHT = ParticleStore.HEIGHT;
+    static final int SPRITE_MARGIN = 30;
+    static final int SPRITE_STEP = 5;
+    static final int PERIPHERY_WIDTH = 33;
+    static final int PERIPHERY_HEIGHT = 19;
+
+    /**
+     * INTEGRATED moves every particle each tick. ANALYTIC leaves the store at the
+     * state it had at {@code epochTime} and evaluates positions in closed form
+     * (see {@link AnalyticMotion}) only when a snapshot is published.
+     */
+    enum MotionMode { INTEGRATED, ANALYTIC }
+
+    private final ParticleStore particles;
+    // null while the particles live in the heap store
+    private final OffHeapParticles offHeap;
+    // off-heap positions on their way into a snapshot, null with the heap store
+    private final float[] chunkX, chunkY;
+    private final ParallelStepper stepper;
+    // null steps the store as one block
+    private final WorldShards shards;
+    private final SnapshotBuffer snapshots = new SnapshotBuffer();
+    private final MpscQueue<SimulationCommand> commands = new MpscQueue<>();
+    private final FrameMetrics metrics = new FrameMetrics();
+    private int[] cellScratch = new int[0];
+    private float[] evalX = new float[0], evalY = new float[0];
+    private final PeripheryIndex periphery = new PeripheryIndex();
+
+    private boolean explorerMode = false;
+    private Particle explorerSprite;
+    private double simTime;
+    private long tick;
+    private MotionMode motionMode = MotionMode.INTEGRATED;
+    // null while particle-particle collisions are off
+    private CollisionSolver collisions;
+    private SplittableRandom random = new SplittableRandom();
+    private InputRecorder recorder;
+    private InputReplay replay;
+    // null unless frames are also published to other processes
+    private SharedFrameRing sharedFrames;
+    // simulation time the store's contents correspond to; lags simTime in ANALYTIC mode
+    private double epochTime;
+    private final ParticleAges ages = new ParticleAges();
+    // seconds a particle lives before it is removed, 0 for forever
+    private double lifetime;
+    // null unless autonomous explorers are running
+    private ExplorerAgents agents;
+
+    Simulation(ParallelStepper stepper) {
+        this(stepper, storageFromSystemProperties());
+    }
+
+    /** Keeps the particles on the heap when {@code storage} is null, otherwise off-heap in that layout. */
+    Simulation(ParallelStepper stepper, OffHeapParticles.Layout storage) {
+        this.particles = ParticleStore.withHandles();
+        this.stepper = stepper;
+        if (storage == null) {
+            offHeap = null;
+            chunkX = chunkY = null;
+            shards = WorldShards.fromSystemProperties(stepper.getWorkers());
+        } else {
+            if ("vector".equalsIgnoreCase(System.getProperty("sim.kernel"))) {
+                throw new UnsupportedOperationException("-Dsim.kernel=vector needs -Dsim.storage=heap");
+            }
+            offHeap = new OffHeapParticles(storage, 0);
+            chunkX = new float[OffHeapParticles.CHUNK];
+            chunkY = new float[OffHeapParticles.CHUNK];
+            shards = null;
+        }
+    }
+
+    /** heap | offheap | offheap32 from -Dsim.storage (default heap), as {@link #storageFor} reads it. */
+    static OffHeapParticles.Layout storageFromSystemProperties() {
+        return storageFor(System.getProperty("sim.storage", "heap"));
+    }
+
+    /** Null for heap, {@link OffHeapParticles.Layout#F64} for offheap and F32 for offheap32. */
+    static OffHeapParticles.Layout storageFor(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "heap":
+                return null;
+            case "offheap":
+                return OffHeapParticles.Layout.F64;
+            case "offheap32":
+                return OffHeapParticles.Layout.F32;
+            default:
+                throw new IllegalArgumentException("Unknown storage: " + name);
+        }
+    }
+
+    private void requireHeap(String feature) {
+        if (offHeap != null) {
+            throw new UnsupportedOperationException("Off-heap storage doesn't support " + feature + "; use -Dsim.storage=heap");
+        }
+    }
+
+    /** The off-heap store, or null while the particles are on the heap. Only for reading its size and layout. */
+    OffHeapParticles getOffHeapParticles() {
+        return offHeap;
+    }
+
+    static MotionMode motionModeFromSystemProperties() {
+        return "analytic".equals(System.getProperty("sim.motion")) ? MotionMode.ANALYTIC : MotionMode.INTEGRATED;
+    }
+
+    /** The particle store, brought up to the current simulation time. */
+    ParticleStore getParticles() {
+        requireHeap("direct access to the particles");
+        materialize();
+        periphery.invalidate();
+        return particles;
+    }
+
+    int particleCount() {
+        return offHeap != null ? offHeap.size() : particles.size();
+    }
+
+    MotionMode getMotionMode() {
+        return motionMode;
+    }
+
+    void setMotionMode(MotionMode motionMode) {
+        if (motionMode == MotionMode.ANALYTIC) {
+            requireHeap("analytic motion");
+        }
+        materialize();
+        this.motionMode = motionMode;
+    }
+
+    /**
+     * Turns particle-particle collisions on or off. They only apply in INTEGRATED
+     * mode, since the closed-form path assumes free flight.
+     */
+    void setCollisionsEnabled(boolean enabled) {
+        if (enabled) {
+            requireHeap("collisions");
+        }
+        collisions = enabled ? new CollisionSolver(CollisionSolver.DEFAULT_RADIUS) : null;
+    }
+
+    boolean isCollisionsEnabled() {
+        return collisions != null;
+    }
+
+    /** Makes subsequent spawns on this thread reproducible. */
+    void setSeed(long seed) {
+        random = new SplittableRandom(seed);
+    }
+
+    static boolean collisionsFromSystemProperties() {
+        return Boolean.getBoolean("sim.collisions");
+    }
+
+    double getSimTime() {
+        return simTime;
+    }
+
+    long getTick() {
+        return tick;
+    }
+
+    /** The physics worker pool. */
+    ParallelStepper getStepper() {
+        return stepper;
+    }
+
+    /** The world's shards, or null if the world isn't sharded. */
+    WorldShards getShards() {
+        return shards;
+    }
+
+    FrameMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** Logs every command applied from now on; call before the simulation thread starts. */
+    void startRecording(InputRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    void stopRecording() {
+        if (recorder != null) {
+            recorder.close(tick);
+            recorder = null;
+        }
+    }
+
+    /** Also publishes every frame to {@code ring}; call before the simulation thread starts. */
+    void setSharedFrames(SharedFrameRing ring) {
+        this.sharedFrames = ring;
+    }
+
+    /** Feeds {@code replay}'s commands in at their recorded ticks; call before the simulation thread starts. */
+    void setReplay(InputReplay replay) {
+        this.replay = replay;
+    }
+
+    /** Any thread: queues {@code command} to be applied before the next step. Never blocks. */
+    void submit(SimulationCommand command) {
+        commands.offer(command);
+    }
+
+    /** Runs all queued tasks and advances physics by {@code deltaTime}. */
+    void step(double deltaTime) {
+        long start = System.nanoTime();
+        if (replay != null) {
+            replay.feed(this, tick);
+        }
+        drainCommands();
+        if (lifetime > 0 && ages.expire(particles, simTime - lifetime) > 0) {
+            periphery.invalidate();
+        }
+        if (agents != null) {
+            agents.move();
+        }
+        if (motionMode == MotionMode.INTEGRATED) {
+            if (offHeap != null) {
+                stepper.forEachChunk(offHeap.size(), (from, to) -> offHeap.step(from, to, deltaTime));
+            } else if (shards != null) {
+                shards.step(particles, stepper, deltaTime);
+            } else {
+                stepper.step(particles, deltaTime);
+            }
+            if (collisions != null) {
+                collisions.resolve(particles, stepper);
+            }
+        }
+        simTime += deltaTime;
+        if (motionMode == MotionMode.INTEGRATED) {
+            epochTime = simTime;
+        }
+        tick++;
+        metrics.record(FrameMetrics.Phase.STEP, System.nanoTime() - start);
+    }
+
+    /**
+     * Jumps {@code seconds} ahead. In ANALYTIC mode this only moves the clock; in
+     * INTEGRATED mode every particle is advanced once in closed form, so the cost is
+     * O(particles) however long the jump is. Jumps that are not finite and positive
+     * are ignored; NaN or infinity would poison every particle for good.
+     */
+    void fastForward(double seconds) {
+        if (!(seconds > 0) || Double.isInfinite(seconds)) {
+            return;
+        }
+        simTime += seconds;
+        if (motionMode == MotionMode.INTEGRATED) {
+            materialize();
+        }
+    }
+
+    /** Rewrites the store to the current simulation time, so it can be mutated directly. */
+    private void materialize() {
+        double t = simTime - epochTime;
+        if (t != 0) {
+            if (offHeap != null) {
+                stepper.forEachChunk(offHeap.size(), (from, to) -> offHeap.advance(from, to, t));
+            } else {
+                stepper.forEachChunk(particles.size(), (from, to) -> AnalyticMotion.advance(particles, from, to, t));
+            }
+            epochTime = simTime;
+        }
+    }
+
+    /** One {@link #step} followed by publishing a snapshot of the result. */
+    void tick(double deltaTime) {
+        step(deltaTime);
+        publish();
+    }
+
+    void drainCommands() {
+        commands.drain(this::apply);
+    }
+
+    private void apply(SimulationCommand command) {
+        long appliedAt = tick; // loading a scene moves the tick
+        try {
+            command.apply(this);
+        } catch (UnsupportedOperationException e) {
+            // refused by the off-heap store, e.g. a lifetime from -Dsim.lifetime or a replayed removal
+            System.err.println("Ignored: " + e.getMessage());
+            return;
+        }
+        if (recorder != null) {
+            recorder.record(appliedAt, command);
+        }
+    }
+
+    void publish() {
+        long start = System.nanoTime();
+        FrameSnapshot frame = snapshots.back();
+        int n = particleCount();
+        frame.ensureCapacity(n);
+        if (cellScratch.length < n) {
+            cellScratch = new int[frame.x.length];
+        }
+        if (offHeap != null) {
+            frame.grid.build(offHeap, frame.x, frame.y, cellScratch, chunkX, chunkY);
+        } else if (motionMode == MotionMode.ANALYTIC && epochTime != simTime) {
+            n = evaluateAnalytic(simTime - epochTime);
+            frame.grid.build(evalX, evalY, n, frame.x, frame.y, cellScratch);
+        } else {
+            // copying into the snapshot doubles as the counting sort for the spatial index
+            frame.grid.build(particles.x, particles.y, n, frame.x, frame.y, cellScratch);
+        }
+        frame.count = n;
+        frame.explorerMode = explorerMode;
+        frame.explorerSpawned = explorerSprite != null;
+        if (explorerSprite != null) {
+            frame.spriteX = explorerSprite.x;
+            frame.spriteY = explorerSprite.y;
+        }
+        frame.simTime = simTime;
+        frame.tick = tick;
+        if (sharedFrames != null) {
+            sharedFrames.publish(frame);
+        }
+        metrics.setParticleCount(particleCount());
+        metrics.record(FrameMetrics.Phase.INDEX, System.nanoTime() - start);
+        frame.agentCount = 0;
+        if (agents != null) {
+            long queryStart = System.nanoTime();
+            agents.query(frame, stepper);
+            metrics.agentsQueried(agents.getCount(), System.nanoTime() - queryStart);
+            agents.copyTo(frame);
+        }
+        if (snapshots.publish()) {
+            metrics.frameDropped();
+        }
+    }
+
+    /**
+     * Evaluates closed-form positions {@code t} seconds past the epoch into the
+     * scratch columns and returns how many were written. In explorer mode without
+     * agents only particles that can be inside the periphery are evaluated and
+     * kept, found through a {@link PeripheryIndex}.
+     */
+    private int evaluateAnalytic(double t) {
+        int n = particles.size();
+        if (evalX.length < n) {
+            evalX = new float[n];
+            evalY = new float[n];
+        }
+        float[] ex = evalX, ey = evalY;
+        if (!explorerMode || explorerSprite == null || agents != null) {
+            stepper.forEachChunk(n, (from, to) -> AnalyticMotion.evaluate(particles, from, to, t, ex, ey));
+            return n;
+        }
+        return periphery.evaluate(particles, epochTime, simTime, explorerSprite.x, explorerSprite.y, stepper,
+                ex, ey);
+    }
+
+    /** Reader side; only one thread may call this. */
+    FrameSnapshot acquireFrame() {
+        return snapshots.acquire();
+    }
+
+    boolean hasFreshFrame() {
+        return snapshots.hasFresh();
+    }
+
+    /** Stops the physics workers and frees any off-heap particles; call once nothing steps or publishes anymore. */
+    void shutdown() {
+        stepper.shutdown();
+        if (offHeap != null) {
+            offHeap.close();
+        }
+    }
+
+    void setExplorerMode(boolean explorerMode) {
+        this.explorerMode = explorerMode;
+        if (explorerSprite == null) {
+            explorerSprite = new Particle(100, 100, 0, 0);
+        }
+    }
+
+    boolean isExplorerMode() {
+        return explorerMode;
+    }
+
+    /** Moves the explorer sprite, refusing steps that would push it past the canvas margin. */
+    void moveExplorerSprite(int dx, int dy) {
+        if (explorerSprite == null || !canMoveSprite(explorerSprite.x, explorerSprite.y, dx, dy)) {
+            return;
+        }
+        explorerSprite.x += dx;
+        explorerSprite.y += dy;
+    }
+
+    /** Whether a sprite at {@code (x, y)} may take the step {@code (dx, dy)} without leaving the canvas margin. */
+    static boolean canMoveSprite(double x, double y, int dx, int dy) {
+        return !((dx < 0 && x - SPRITE_MARGIN <= 0) || (dx > 0 && x + SPRITE_MARGIN >= WIDTH)
+                || (dy < 0 && y - SPRITE_MARGIN <= 0) || (dy > 0 && y + SPRITE_MARGIN >= HEIGHT));
+    }
+
+    void addParticles(int n, double startX, double startY, double endX, double endY,
+                      double initialAngle, double velocity) {
+        spawn(SpawnDistribution.byDistance(startX, startY, endX, endY, initialAngle, velocity), n);
+    }
+
+    void addParticlesByAngle(int n, double startX, double startY, double velocity, double startAngle, double endAngle) {
+        spawn(SpawnDistribution.byAngle(startX, startY, velocity, startAngle, endAngle), n);
+    }
+
+    void addParticlesByVelocity(int n, double startX, double startY, double angle, double startVelocity, double endVelocity) {
+        spawn(SpawnDistribution.byVelocity(startX, startY, angle, startVelocity, endVelocity), n);
+    }
+
+    void spawn(SpawnDistribution distribution, int n) {
+        materialize();
+        if (offHeap != null) {
+            offHeap.fill(distribution, random, n);
+            return;
+        }
+        int from = particles.size();
+        particles.fill(distribution, random, n);
+        ages.born(particles, from, particles.size(), simTime);
+        periphery.invalidate();
+    }
+
+    void saveScene(Path path) throws IOException {
+        materialize();
+        SceneFile.Header header = new SceneFile.Header();
+        header.flags = (explorerMode ? SceneFile.FLAG_EXPLORER_MODE : 0)
+                | (explorerSprite != null ? SceneFile.FLAG_EXPLORER_SPAWNED : 0)
+                | (motionMode == MotionMode.ANALYTIC ? SceneFile.FLAG_ANALYTIC : 0);
+        if (explorerSprite != null) {
+            header.spriteX = explorerSprite.x;
+            header.spriteY = explorerSprite.y;
+        }
+        header.simTime = simTime;
+        header.tick = tick;
+        if (offHeap != null) {
+            SceneFile.write(path, header, offHeap);
+        } else {
+            SceneFile.write(path, header, particles);
+        }
+    }
+
+    /**
+     * Replaces the whole simulation state with a saved scene. Off-heap storage
+     * loads analytic scenes into integrated motion; they are saved at the current
+     * time, so only the mode differs.
+     */
+    SceneFile.Header loadScene(Path path) throws IOException {
+        SceneFile.Header header = offHeap != null ? SceneFile.read(path, offHeap) : SceneFile.read(path, particles);
+        explorerMode = (header.flags & SceneFile.FLAG_EXPLORER_MODE) != 0;
+        explorerSprite = (header.flags & SceneFile.FLAG_EXPLORER_SPAWNED) != 0
+                ? new Particle(header.spriteX, header.spriteY, 0, 0) : null;
+        motionMode = (header.flags & SceneFile.FLAG_ANALYTIC) != 0 && offHeap == null
+                ? MotionMode.ANALYTIC : MotionMode.INTEGRATED;
+        simTime = header.simTime;
+        epochTime = simTime;
+        tick = header.tick;
+        // scenes don't store ages; everything loaded starts its life now
+        ages.clear();
+        ages.born(particles, 0, particles.size(), simTime);
+        periphery.invalidate();
+        return header;
+    }
+
+    void clear() {
+        particles.clear();
+        if (offHeap != null) {
+            offHeap.clear();
+        }
+        ages.clear();
+        epochTime = simTime;
+        periphery.invalidate();
+    }
+
+    /** Removes the particles inside the rectangle, in world coordinates, and returns how many. */
+    int removeInRect(double minX, double minY, double maxX, double maxY) {
+        requireHeap("removing particles");
+        materialize();
+        int removed = particles.removeInRect(minX, minY, maxX, maxY);
+        ages.trim(particles);
+        periphery.invalidate();
+        return removed;
+    }
+
+    /** Removes the particle {@code handle} names (see {@link #handleOf}), if it is still there. */
+    boolean remove(long handle) {
+        requireHeap("removing particles");
+        boolean removed = particles.remove(handle);
+        ages.trim(particles);
+        periphery.invalidate();
+        return removed;
+    }
+
+    /** Stable handle of the particle currently at {@code index}. */
+    long handleOf(int index) {
+        requireHeap("particle handles");
+        return particles.handleOf(index);
+    }
+
+    /** Removes every particle at least {@code age} seconds old and returns how many. */
+    int expireOlderThan(double age) {
+        requireHeap("expiring particles");
+        periphery.invalidate();
+        return ages.expire(particles, simTime - age);
+    }
+
+    /** From now on removes particles once they are {@code seconds} old; 0 keeps them forever. */
+    void setLifetime(double seconds) {
+        if (seconds > 0) {
+            requireHeap("particle lifetimes");
+        }
+        lifetime = Math.max(0, seconds);
+    }
+
+    double getLifetime() {
+        return lifetime;
+    }
+
+    static double lifetimeFromSystemProperties() {
+        return Double.parseDouble(System.getProperty("sim.lifetime", "0"));
+    }
+
+    /**
+     * Replaces the explorer agents with {@code count} new ones at random places,
+     * answered every publish; 0 removes them.
+     */
+    void setAgents(int count, ExplorerAgents.Behaviour behaviour) {
+        if (count > 0) {
+            requireHeap("explorer agents");
+        }
+        agents = count > 0 ? new ExplorerAgents(count, behaviour, random.split()) : null;
+    }
+
+    /** Null without agents. */
+    ExplorerAgents getAgents() {
+        return agents;
+    }
+
+    /** Pre-sizes the store for {@code n} more particles, so later batches append without regrowing. */
+    void reserve(int n) {
+        if (offHeap != null) {
+            offHeap.ensureCapacity(offHeap.size() + n);
+        } else {
+            particles.ensureCapacity(particles.size() + n);
+        }
+    }
+
+    /** Appends a batch generated elsewhere; it becomes visible all at once at the next publish. */
+    void insertBatch(ParticleStore batch) {
+        materialize();
+        if (offHeap != null) {
+            offHeap.append(batch);
+            return;
+        }
+        int from = particles.size();
+        particles.append(batch);
+        ages.born(particles, from, particles.size(), simTime);
+        periphery.invalidate();
+    }
+}
@@ -0,0 +1,313 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A change to simulation state requested from outside the simulation thread.
+ * Commands are queued with {@link Simulation#submit} and applied in submission
+ * order at the start of the next tick, so the physics never shares mutable state
+ * with the EDT or the spawner threads.
+ */
+interface SimulationCommand {
+
+    void apply(Simulation simulation);
+
+    /** The line an {@link InputRecorder} logs for this command, or null if it isn't recorded. */
+    default String record() {
+        return null;
+    }
+
+    /** Appends batch {@code index} of spawn {@code job}, generated elsewhere. */
+    final class InsertBatch implements SimulationCommand {
+        final int job, index;
+        final ParticleStore batch;
+
+        InsertBatch(int job, int index, ParticleStore batch) {
+            this.job = job;
+            this.index = index;
+            this.batch = batch;
+        }
+
+        @Override
+        public void apply(Simulation simulation) {
+            simulation.insertBatch(batch);
+        }
+
+        @Override
+        public String record() {
+            // the particles themselves are rebuilt from the job seed on replay
+            return "batch " + job + " " + index;
+        }
+    }
+
+    /** Spawns particles on the simulation thread itself; fine for small counts. */
+    final class Spawn implements SimulationCommand {
+        final SpawnDistribution distribution;
+        final int count;
+
+        Spawn(SpawnDistribution distribution, int count) {
+            this.distribution = distribution;
+            this.count = count;
+        }
+
+        @Override
+        public void apply(Simulation simulation) {
+            simulation.spawn(distribution, count);
+        }
+
+        @Override
+        public String record() {
+            String description = distribution.describe();
+            return description == null ? null : "spawnNow " + count + " " + description;
+        }
+    }
+
+    /** Announces a {@link BulkSpawner} job and reserves room for all of its batches. */
+    final class BeginSpawn implements SimulationCommand {
+        final int job;
+        final SpawnDistribution distribution;
+        final int count;
+        final long seed;
+
+        BeginSpawn(int job, SpawnDistribution distribution, int count, long seed) {
+            this.job = job;
+            this.distribution = distribution;
+            this.count = count;
+            this.seed = seed;
+        }
+
+        @Override
+        public void apply(Simulation simulation) {
+            simulation.reserve(count);
+        }
+
+        @Override
+        public String record() {
+            String description = distribution.describe();
+            return description == null ? null : "spawn " + job + " " + count + " " + seed + " " + description;
+        }
+    }
+
+    final class Clear implements SimulationCommand {
+        @Override
+        public void apply(Simulation simulation) {
+            simulation.clear();
+        }
+
+        @Override
+        public String record() {
+            return "clear";
+        }
+    }
+
+    /** Removes the particles inside a rectangle given in world coordinates. */
+    final class RemoveRect implements SimulationCommand {
+        final double minX, minY, maxX, maxY;
+
+        RemoveRect(double minX, double minY, double maxX, double maxY) {
+            this.minX = Math.min(minX, maxX);
+            this.minY = Math.min(minY, maxY);
+            this.maxX = Math.max(minX, maxX);
+            this.maxY = Math.max(minY, maxY);
+        }
+
+        @Override
+        public void apply(Simulation simulation) {
+            simulation.removeInRect(minX, minY, maxX, maxY);
+        }
+
+        @Override
+        public String record() {
+            return "removeRect " + minX + " " + minY + " " + maxX + " " + maxY;
+        }
+    }
+
+    /** Removes one particle by its stable handle. */
+    final class RemoveParticle implements SimulationCommand {
+        final long handle;
+
+        RemoveParticle(long handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public void apply(Simulation simulation) {
+            simulation.remove(handle);
+        }
+
+        @Override
+        public String record() {
+            return "remove " + handle;
+        }
+    }
+
+    /** Removes every particle at least {@code age} seconds old, once. */
+    final class Expire implements SimulationCommand {
+        final double age;
+
+        Expire(double age) {
+            this.age = age;
+        }
+
+        @Override
+        public void apply(Simulation simulation) {
+            simulation.expireOlderThan(age);
+        }
+
+        @Override
+        public String record() {
+            return "expire " + age;
+        }
+    }
+
+    /** Sets how long particles live from now on; 0 keeps them forever. */
+    final class SetLifetime implements SimulationCommand {
+        final double seconds;
+
+        SetLifetime(double seconds) {
+            this.seconds = seconds;
+        }
+
+        @Override
+        public void apply(Simulation simulation) {
+            simulation.setLifetime(seconds);
+        }
+
+        @Override
+        public String record() {
+            return "lifetime " + seconds;
+        }
+    }
+
+    final class SetAgents implements SimulationCommand {
+        final int count;
+        final ExplorerAgents.Behaviour behaviour;
+
+        SetAgents(int count, ExplorerAgents.Behaviour behaviour) {
+            this.count = count;
+            this.behaviour = behaviour;
+        }
+
+        @Override
+        public void apply(Simulation simulation) {
+            simulation.setAgents(count, behaviour);
+        }
+
+        @Override
+        public String record() {
+            return "agents " + count + " " + behaviour.name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    final class MoveSprite implements SimulationCommand {
+        final int dx, dy;
+
+        MoveSprite(int dx, int dy) {
+            this.dx = dx;
+            this.dy = dy;
+        }
+
+        @Override
+        public void apply(Simulation simulation) {
+            simulation.moveExplorerSprite(dx, dy);
+        }
+
+        @Override
+        public String record() {
+            return "move " + dx + " " + dy;
+        }
+    }
+
+    final class SetExplorerMode implements SimulationCommand {
+        final boolean explorerMode;
+
+        SetExplorerMode(boolean explorerMode) {
+            this.explorerMode = explorerMode;
+        }
+
+        @Override
+        public void apply(Simulation simulation) {
+            simulation.setExplorerMode(explorerMode);
+        }
+
+        @Override
+        public String record() {
+            return "mode " + (explorerMode ? "explorer" : "developer");
+        }
+    }
+
+    final class FastForward implements SimulationCommand {
+        final double seconds;
+
+        FastForward(double seconds) {
+            this.seconds = seconds;
+        }
+
+        @Override
+        public void apply(Simulation simulation) {
+            simulation.fastForward(seconds);
+        }
+
+        @Override
+        public String record() {
+            return "ff " + seconds;
+        }
+    }
+
+    /** Writes the scene to disk on the simulation thread; {@code done} completes when the file is written. */
+    final class SaveScene implements SimulationCommand {
+        final Path path;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        SaveScene(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public void apply(Simulation simulation) {
+            try {
+                simulation.saveScene(path);
+                done.complete(null);
+            } catch (IOException | RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        }
+    }
+
+    /** Replaces the simulation state with a saved scene; {@code done} completes with its header. */
+    final class LoadScene implements SimulationCommand {
+        final Path path;
+        final CompletableFuture<SceneFile.Header> done = new CompletableFuture<>();
+
+        LoadScene(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public void apply(Simulation simulation) {
+            try {
+                done.complete(simulation.loadScene(path));
+            } catch (IOException | RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public String record() {
+            // last, so paths with spaces survive
+            return "load " + path.toAbsolutePath();
+        }
+    }
+
+    /** Ends the current recording at this tick; {@code done} completes once the log is closed. */
+    final class StopRecording implements SimulationCommand {
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        @Override
+        public void apply(Simulation simulation) {
+            simulation.stopRecording();
+            done.complete(null);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Drives a {@link Simulation} on its own thread with a fixed timestep. Real elapsed
+ * time is accumulated and consumed in whole steps, so physics advances at the
+ * same speed no matter how fast frames are drawn. Each batch of steps publishes
+ * one snapshot, after which {@code onFrame} is called from the simulation thread.
+ *
+ * The step rate is set with -Dsim.hz. Under load {@link FrameGovernor} can
+ * swap runs of steps for fewer, longer ones.
+ */
+class SimulationLoop implements Runnable {
+    static final int DEFAULT_SIM_HZ = 60;
+
+    // simulated time per step at 60 Hz; matches the feel of the original per-frame 0.05 delta
+    private static final double BASE_DELTA_TIME = 0.05;
+    private static final int MAX_STEPS_PER_FRAME = 5;
+
+    private final Simulation simulation;
+    private final Runnable onFrame;
+    private final long stepNanos;
+    private final double deltaTime;
+    // each step covers this many base steps, so fewer, longer steps keep the same simulated speed
+    private volatile int stepMultiplier = 1;
+    private volatile boolean running;
+    private Thread thread;
+
+    SimulationLoop(Simulation simulation, int simHz, Runnable onFrame) {
+        simHz = Math.max(1, simHz);
+        this.simulation = simulation;
+        this.onFrame = onFrame;
+        this.stepNanos = 1_000_000_000L / simHz;
+        this.deltaTime = BASE_DELTA_TIME * DEFAULT_SIM_HZ / simHz;
+    }
+
+    static int simHzFromSystemProperties() {
+        return Integer.getInteger("sim.hz", DEFAULT_SIM_HZ);
+    }
+
+    /** The step rate whose step size is {@code deltaTime}, e.g. to match a recording. */
+    static int simHzForDeltaTime(double deltaTime) {
+        return Math.max(1, (int) Math.round(BASE_DELTA_TIME * DEFAULT_SIM_HZ / deltaTime));
+    }
+
+    double getDeltaTime() {
+        return deltaTime;
+    }
+
+    /** Takes one step of {@code multiplier} times the step size in place of that many steps. */
+    void setStepMultiplier(int multiplier) {
+        stepMultiplier = Math.max(1, multiplier);
+    }
+
+    int getStepMultiplier() {
+        return stepMultiplier;
+    }
+
+    synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        long previous = System.nanoTime();
+        long accumulator = 0;
+        while (running) {
+            long now = System.nanoTime();
+            accumulator += now - previous;
+            previous = now;
+
+            int multiplier = stepMultiplier;
+            long periodNanos = stepNanos * multiplier;
+            int steps = 0;
+            while (accumulator >= periodNanos && steps < MAX_STEPS_PER_FRAME) {
+                simulation.step(deltaTime * multiplier);
+                accumulator -= periodNanos;
+                steps++;
+            }
+            // fell too far behind: drop the backlog instead of spiralling
+            if (steps == MAX_STEPS_PER_FRAME) {
+                simulation.getMetrics().stepsDropped(accumulator / stepNanos);
+                accumulator = 0;
+            }
+            if (steps > 0) {
+                simulation.publish();
+                if (onFrame != null) {
+                    onFrame.run();
+                }
+            }
+
+            long sleepNanos = periodNanos - accumulator;
+            if (sleepNanos > 0) {
+                try {
+                    Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
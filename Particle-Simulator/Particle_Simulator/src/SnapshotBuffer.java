@@ -0,0 +1,46 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free triple buffer between one writer (the simulation thread) and one
+ * reader (the EDT). The writer fills its back slot and swaps it with the shared
+ * middle slot; the reader swaps its front slot with the middle one only when a
+ * newer frame is waiting. Neither side blocks, and no buffers are allocated per
+ * frame.
+ */
+class SnapshotBuffer {
+    private static final int INDEX_MASK = 0b11;
+    private static final int FRESH = 0b100;
+
+    private final FrameSnapshot[] slots = {new FrameSnapshot(), new FrameSnapshot(), new FrameSnapshot()};
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;
+    private int front = 2;
+
+    /** Writer side: the slot to fill before calling {@link #publish()}. */
+    FrameSnapshot back() {
+        return slots[back];
+    }
+
+    /**
+     * Writer side: hands the back slot to the reader.
+     *
+     * @return true if this replaced a frame the reader never acquired
+     */
+    boolean publish() {
+        int previous = middle.getAndSet(back | FRESH);
+        back = previous & INDEX_MASK;
+        return (previous & FRESH) != 0;
+    }
+
+    boolean hasFresh() {
+        return (middle.get() & FRESH) != 0;
+    }
+
+    /** Reader side: the most recent published frame. */
+    FrameSnapshot acquire() {
+        if (hasFresh()) {
+            front = middle.getAndSet(front) & INDEX_MASK;
+        }
+        return slots[front];
+    }
+}
@@ -0,0 +1,164 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Uniform grid over the canvas built by counting sort. {@link #build} scatters
+ * particle positions into output arrays ordered by cell, so every cell (and every
+ * run of horizontally adjacent cells) is one contiguous index range. Region
+ * queries then only visit the cells overlapping the region.
+ *
+ * Positions outside the canvas are clamped into the border cells.
+ */
+class SpatialGrid {
+    final double cellWidth, cellHeight;
+    final int cols, rows;
+    // cellStart[c] .. cellStart[c + 1] is the range of particles in cell c
+    final int[] cellStart;
+
+    SpatialGrid(double width, double height, double cellWidth, double cellHeight) {
+        this.cellWidth = cellWidth;
+        this.cellHeight = cellHeight;
+        this.cols = Math.max(1, (int) Math.ceil(width / cellWidth));
+        this.rows = Math.max(1, (int) Math.ceil(height / cellHeight));
+        this.cellStart = new int[cols * rows + 1];
+    }
+
+    int col(double x) {
+        int c = (int) (x / cellWidth);
+        return c < 0 ? 0 : (c >= cols ? cols - 1 : c);
+    }
+
+    int row(double y) {
+        int r = (int) (y / cellHeight);
+        return r < 0 ? 0 : (r >= rows ? rows - 1 : r);
+    }
+
+    /**
+     * Sorts {@code n} positions into {@code outX}/{@code outY} by cell.
+     * {@code cellOf} is scratch space of at least {@code n} ints.
+     */
+    void build(double[] xs, double[] ys, int n, float[] outX, float[] outY, int[] cellOf) {
+        int[] start = cellStart;
+        Arrays.fill(start, 0);
+        for (int i = 0; i < n; i++) {
+            int cell = row(ys[i]) * cols + col(xs[i]);
+            cellOf[i] = cell;
+            start[cell + 1]++;
+        }
+        for (int c = 0; c < start.length - 1; c++) {
+            start[c + 1] += start[c];
+        }
+        // start[c] is used as the write cursor and ends up at start[c + 1]; shift back afterwards
+        for (int i = 0; i < n; i++) {
+            int slot = start[cellOf[i]]++;
+            outX[slot] = (float) xs[i];
+            outY[slot] = (float) ys[i];
+        }
+        for (int c = start.length - 1; c > 0; c--) {
+            start[c] = start[c - 1];
+        }
+        start[0] = 0;
+    }
+
+    /** Same as the double overload, for positions that are already single precision. */
+    void build(float[] xs, float[] ys, int n, float[] outX, float[] outY, int[] cellOf) {
+        int[] start = cellStart;
+        Arrays.fill(start, 0);
+        for (int i = 0; i < n; i++) {
+            int cell = row(ys[i]) * cols + col(xs[i]);
+            cellOf[i] = cell;
+            start[cell + 1]++;
+        }
+        for (int c = 0; c < start.length - 1; c++) {
+            start[c + 1] += start[c];
+        }
+        for (int i = 0; i < n; i++) {
+            int slot = start[cellOf[i]]++;
+            outX[slot] = xs[i];
+            outY[slot] = ys[i];
+        }
+        for (int c = start.length - 1; c > 0; c--) {
+            start[c] = start[c - 1];
+        }
+        start[0] = 0;
+    }
+
+    /**
+     * Same as the double overload, for every particle of an off-heap store, read
+     * {@link OffHeapParticles#CHUNK} at a time into {@code chunkX}/{@code chunkY}.
+     */
+    void build(OffHeapParticles particles, float[] outX, float[] outY, int[] cellOf, float[] chunkX, float[] chunkY) {
+        int n = particles.size();
+        int[] start = cellStart;
+        Arrays.fill(start, 0);
+        particles.forEachChunk(0, n, chunkX, chunkY, (from, xs, ys, count) -> {
+            for (int k = 0; k < count; k++) {
+                int cell = row(ys[k]) * cols + col(xs[k]);
+                cellOf[from + k] = cell;
+                start[cell + 1]++;
+            }
+        });
+        for (int c = 0; c < start.length - 1; c++) {
+            start[c + 1] += start[c];
+        }
+        particles.forEachChunk(0, n, chunkX, chunkY, (from, xs, ys, count) -> {
+            for (int k = 0; k < count; k++) {
+                int slot = start[cellOf[from + k]]++;
+                outX[slot] = xs[k];
+                outY[slot] = ys[k];
+            }
+        });
+        for (int c = start.length - 1; c > 0; c--) {
+            start[c] = start[c - 1];
+        }
+        start[0] = 0;
+    }
+
+    /**
+     * Sorts the indices {@code 0..n-1} of the positions into {@code order} by cell,
+     * leaving the positions where they are: slot {@code s} of a cell range holds
+     * particle {@code order[s]}. {@code cellOf} is scratch space of at least {@code n} ints.
+     */
+    void sort(float[] xs, float[] ys, int n, int[] order, int[] cellOf) {
+        int[] start = cellStart;
+        Arrays.fill(start, 0);
+        for (int i = 0; i < n; i++) {
+            int cell = row(ys[i]) * cols + col(xs[i]);
+            cellOf[i] = cell;
+            start[cell + 1]++;
+        }
+        for (int c = 0; c < start.length - 1; c++) {
+            start[c + 1] += start[c];
+        }
+        for (int i = 0; i < n; i++) {
+            order[start[cellOf[i]]++] = i;
+        }
+        for (int c = start.length - 1; c > 0; c--) {
+            start[c] = start[c - 1];
+        }
+        start[0] = 0;
+    }
+
+    /** Visits the index of every particle whose cell overlaps the given rectangle. */
+    void forEachInRect(double minX, double minY, double maxX, double maxY, IntConsumer visitor) {
+        int c0 = col(minX), c1 = col(maxX);
+        int r0 = row(minY), r1 = row(maxY);
+        for (int r = r0; r <= r1; r++) {
+            int from = cellStart[r * cols + c0];
+            int to = cellStart[r * cols + c1 + 1];
+            for (int i = from; i < to; i++) {
+                visitor.accept(i);
+            }
+        }
+    }
+
+    /** Start of the contiguous index range covering cells {@code c0..c1} in row {@code r}. */
+    int rangeStart(int r, int c0) {
+        return cellStart[r * cols + c0];
+    }
+
+    /** End (exclusive) of the contiguous index range covering cells {@code c0..c1} in row {@code r}. */
+    int rangeEnd(int r, int c1) {
+        return cellStart[r * cols + c1 + 1];
+    }
+}
@@ -0,0 +1,111 @@
+import java.util.SplittableRandom;
+
+/**
+ * How a batch of new particles is spread, one factory per input dialog. A
+ * distribution writes particle {@code i} straight into primitive columns, so the
+ * same code fills the live store or a detached batch built on another thread.
+ *
+ * The factory distributions also {@link #describe} themselves as one line of
+ * text that {@link #parse} turns back into an equal distribution, which is how
+ * spawns end up in an {@link InputRecorder} log.
+ */
+interface SpawnDistribution {
+
+    void sample(SplittableRandom random, double[] x, double[] y, double[] vx, double[] vy, int i);
+
+    /** The factory name and arguments, or null if this distribution can't be recreated with {@link #parse}. */
+    default String describe() {
+        return null;
+    }
+
+    /** Uniform positions in the rectangle, all moving along {@code angle} at {@code velocity}. */
+    static SpawnDistribution byDistance(double startX, double startY, double endX, double endY,
+                                        double angle, double velocity) {
+        double radians = Math.toRadians(angle);
+        double cvx = velocity * Math.cos(radians), cvy = velocity * Math.sin(radians);
+        return new SpawnDistribution() {
+            @Override
+            public void sample(SplittableRandom random, double[] x, double[] y, double[] vx, double[] vy, int i) {
+                x[i] = startX + random.nextDouble() * (endX - startX);
+                y[i] = startY + random.nextDouble() * (endY - startY);
+                vx[i] = cvx;
+                vy[i] = cvy;
+            }
+
+            @Override
+            public String describe() {
+                return join("distance", startX, startY, endX, endY, angle, velocity);
+            }
+        };
+    }
+
+    /** One spawn point, angles uniform in {@code [startAngle, endAngle)}. */
+    static SpawnDistribution byAngle(double startX, double startY, double velocity,
+                                     double startAngle, double endAngle) {
+        return new SpawnDistribution() {
+            @Override
+            public void sample(SplittableRandom random, double[] x, double[] y, double[] vx, double[] vy, int i) {
+                double radians = Math.toRadians(startAngle + random.nextDouble() * (endAngle - startAngle));
+                x[i] = startX;
+                y[i] = startY;
+                vx[i] = velocity * Math.cos(radians);
+                vy[i] = velocity * Math.sin(radians);
+            }
+
+            @Override
+            public String describe() {
+                return join("angle", startX, startY, velocity, startAngle, endAngle);
+            }
+        };
+    }
+
+    /** One spawn point and direction, speeds uniform in {@code [startVelocity, endVelocity)}. */
+    static SpawnDistribution byVelocity(double startX, double startY, double angle,
+                                        double startVelocity, double endVelocity) {
+        double radians = Math.toRadians(angle);
+        double cos = Math.cos(radians), sin = Math.sin(radians);
+        return new SpawnDistribution() {
+            @Override
+            public void sample(SplittableRandom random, double[] x, double[] y, double[] vx, double[] vy, int i) {
+                double velocity = startVelocity + random.nextDouble() * (endVelocity - startVelocity);
+                x[i] = startX;
+                y[i] = startY;
+                vx[i] = velocity * cos;
+                vy[i] = velocity * sin;
+            }
+
+            @Override
+            public String describe() {
+                return join("velocity", startX, startY, angle, startVelocity, endVelocity);
+            }
+        };
+    }
+
+    /** Inverse of {@link #describe}: {@code "angle 640.0 360.0 100.0 0.0 360.0"} etc. */
+    static SpawnDistribution parse(String description) {
+        String[] tokens = description.trim().split("\\s+");
+        double[] a = new double[tokens.length - 1];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = Double.parseDouble(tokens[i + 1]);
+        }
+        switch (tokens[0] + "/" + a.length) {
+            case "distance/6":
+                return byDistance(a[0], a[1], a[2], a[3], a[4], a[5]);
+            case "angle/5":
+                return byAngle(a[0], a[1], a[2], a[3], a[4]);
+            case "velocity/5":
+                return byVelocity(a[0], a[1], a[2], a[3], a[4]);
+            default:
+                throw new IllegalArgumentException("Unknown distribution: " + description);
+        }
+    }
+
+    // Double.toString round-trips exactly, so a parsed distribution samples the same values
+    private static String join(String name, double... args) {
+        StringBuilder sb = new StringBuilder(name);
+        for (double arg : args) {
+            sb.append(' ').append(Double.toString(arg));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,98 @@
+import java.util.Locale;
+
+/**
+ * The inner loop of a physics tick: moves particles {@code [from, to)} of a
+ * store and reflects them off the canvas borders. {@link ParallelStepper} runs
+ * it once per chunk.
+ *
+ * {@link #SCALAR} is {@link ParticleStore#step(int, int, double)}. The vector
+ * kernel lives in {@link VectorStepKernel} and is only linked when the JVM was
+ * started with {@code --add-modules jdk.incubator.vector}; without it every
+ * lookup quietly falls back to scalar.
+ *
+ * Chosen with -Dsim.kernel=auto|scalar|vector (default auto, which takes the
+ * vector kernel whenever it is available).
+ */
+interface StepKernel {
+
+    StepKernel SCALAR = new StepKernel() {
+        @Override
+        public void step(ParticleStore store, int from, int to, double deltaTime) {
+            store.step(from, to, deltaTime);
+        }
+
+        @Override
+        public int step(ParticleStore store, int from, int to, double deltaTime,
+                        double lo, double hi, int[] outside, int count) {
+            return store.step(from, to, deltaTime, lo, hi, outside, count);
+        }
+
+        @Override
+        public String name() {
+            return "scalar";
+        }
+    };
+
+    void step(ParticleStore store, int from, int to, double deltaTime);
+
+    /**
+     * Steps like {@link #step(ParticleStore, int, int, double)} and appends to
+     * {@code outside}, from {@code count} on, the index of every particle whose
+     * new x is outside {@code [lo, hi)}; {@link WorldShards} uses this to find the
+     * particles leaving a shard without a second pass. Returns the new count.
+     * {@code outside} must have room for {@code to - from} more.
+     */
+    default int step(ParticleStore store, int from, int to, double deltaTime,
+                     double lo, double hi, int[] outside, int count) {
+        step(store, from, to, deltaTime);
+        double[] x = store.x;
+        for (int i = from; i < to; i++) {
+            if (x[i] < lo || x[i] >= hi) {
+                outside[count++] = i;
+            }
+        }
+        return count;
+    }
+
+    String name();
+
+    static StepKernel fromSystemProperties() {
+        return forName(System.getProperty("sim.kernel", "auto"));
+    }
+
+    /** Resolves {@code auto}, {@code scalar} or {@code vector}; asking for vector without the module warns and falls back. */
+    static StepKernel forName(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "scalar":
+                return SCALAR;
+            case "auto": {
+                StepKernel vector = vector();
+                return vector != null ? vector : SCALAR;
+            }
+            case "vector": {
+                StepKernel vector = vector();
+                if (vector == null) {
+                    System.err.println("Vector kernel unavailable, run with --add-modules jdk.incubator.vector;"
+                            + " using the scalar kernel");
+                    return SCALAR;
+                }
+                return vector;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown step kernel: " + name);
+        }
+    }
+
+    /** The Vector API kernel, or null if the incubator module isn't in the boot layer. */
+    static StepKernel vector() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            // by name, so nothing links against the incubator module unless it is there
+            return (StepKernel) Class.forName("VectorStepKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link StepKernel} on the incubating Vector API. Each iteration moves a full
+ * vector of particles, and the wall checks become lane masks that blend the
+ * negated velocity in, so the loop has no data-dependent branches. The
+ * arithmetic is the scalar kernel's, multiply then add without fusing, so both
+ * produce bit-identical stores. The tail shorter than a vector runs scalar.
+ * The shard-bounded variant tests the new x against the shard with one more mask.
+ *
+ * Only ever instantiated through {@link StepKernel#vector()}.
+ */
+final class VectorStepKernel implements StepKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public void step(ParticleStore store, int from, int to, double deltaTime) {
+        step(store, from, to, deltaTime, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, null, 0);
+    }
+
+    @Override
+    public int step(ParticleStore store, int from, int to, double deltaTime,
+                    double lo, double hi, int[] outside, int count) {
+        double[] x = store.x, y = store.y, vx = store.vx, vy = store.vy;
+        int lanes = SPECIES.length();
+        int i = from;
+        for (int upper = from + SPECIES.loopBound(to - from); i < upper; i += lanes) {
+            DoubleVector pvx = DoubleVector.fromArray(SPECIES, vx, i);
+            DoubleVector nx = DoubleVector.fromArray(SPECIES, x, i).add(pvx.mul(deltaTime));
+            nx.intoArray(x, i);
+            VectorMask<Double> flipX = nx.lt(0).and(pvx.lt(0))
+                    .or(nx.compare(VectorOperators.GT, ParticleStore.WIDTH).and(pvx.compare(VectorOperators.GT, 0)));
+            pvx.blend(pvx.neg(), flipX).intoArray(vx, i);
+
+            DoubleVector pvy = DoubleVector.fromArray(SPECIES, vy, i);
+            DoubleVector ny = DoubleVector.fromArray(SPECIES, y, i).add(pvy.mul(deltaTime));
+            ny.intoArray(y, i);
+            VectorMask<Double> flipY = ny.lt(0).and(pvy.lt(0))
+                    .or(ny.compare(VectorOperators.GT, ParticleStore.HEIGHT).and(pvy.compare(VectorOperators.GT, 0)));
+            pvy.blend(pvy.neg(), flipY).intoArray(vy, i);
+
+            // leaving the range is rare, so one mask test per vector and lane work only on a hit
+            VectorMask<Double> out = nx.lt(lo).or(nx.compare(VectorOperators.GE, hi));
+            if (out.anyTrue()) {
+                for (int lane = out.firstTrue(); lane < lanes; lane++) {
+                    if (out.laneIsSet(lane)) {
+                        outside[count++] = i + lane;
+                    }
+                }
+            }
+        }
+        return store.step(i, to, deltaTime, lo, hi, outside, count);
+    }
+
+    @Override
+    public String name() {
+        return "vector" + SPECIES.vectorBitSize();
+    }
+}
@@ -0,0 +1,142 @@
+import java.util.Locale;
+
+/**
+ * The part of the world developer mode shows: the world position of the top
+ * left screen pixel and a zoom in screen pixels per world unit. World point
+ * {@code (x, y)} lands on screen pixel {@code ((x - left) * zoom, (y - top) * zoom)}.
+ *
+ * Zoom is limited to between showing the whole world and {@link #MAX_ZOOM}, and
+ * the view is kept over the world; a world smaller than the view sits in its
+ * top left corner, as it always has.
+ * Not thread-safe: the EDT owns the window's viewport.
+ */
+class Viewport {
+    // the window's size, and the frame size headless runs render at whatever the world's size
+    static final int SCREEN_WIDTH = 1280;
+    static final int SCREEN_HEIGHT = 720;
+    static final double MAX_ZOOM = 16;
+
+    private final int screenWidth, screenHeight;
+    private double left, top, zoom = 1;
+
+    Viewport(int screenWidth, int screenHeight) {
+        this.screenWidth = screenWidth;
+        this.screenHeight = screenHeight;
+        clamp();
+    }
+
+    /**
+     * Parses a headless camera option: {@code fit} for the whole world, or
+     * {@code left,top,zoom}. Null gives the default view of the top left corner at zoom 1.
+     */
+    static Viewport parse(String spec, int screenWidth, int screenHeight) {
+        Viewport view = new Viewport(screenWidth, screenHeight);
+        if (spec == null) {
+            return view;
+        }
+        if (spec.toLowerCase(Locale.ROOT).equals("fit")) {
+            view.fit();
+            return view;
+        }
+        String[] parts = spec.split(",");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Expected fit or left,top,zoom, got: " + spec);
+        }
+        view.zoom = Double.parseDouble(parts[2]);
+        view.left = Double.parseDouble(parts[0]);
+        view.top = Double.parseDouble(parts[1]);
+        view.clamp();
+        return view;
+    }
+
+    double getLeft() {
+        return left;
+    }
+
+    double getTop() {
+        return top;
+    }
+
+    double getZoom() {
+        return zoom;
+    }
+
+    double worldX(double screenX) {
+        return left + screenX / zoom;
+    }
+
+    double worldY(double screenY) {
+        return top + screenY / zoom;
+    }
+
+    double screenX(double worldX) {
+        return (worldX - left) * zoom;
+    }
+
+    double screenY(double worldY) {
+        return (worldY - top) * zoom;
+    }
+
+    /** Moves the view by a distance in screen pixels. */
+    void pan(double screenDx, double screenDy) {
+        left += screenDx / zoom;
+        top += screenDy / zoom;
+        clamp();
+    }
+
+    /** Zooms by {@code factor}, keeping the world point under screen pixel {@code (screenX, screenY)} in place. */
+    void zoomAt(double factor, double screenX, double screenY) {
+        double wx = worldX(screenX), wy = worldY(screenY);
+        zoom *= factor;
+        clamp();
+        left = wx - screenX / zoom;
+        top = wy - screenY / zoom;
+        clamp();
+    }
+
+    /** Shows the whole world. */
+    void fit() {
+        zoom = minZoom();
+        clamp();
+    }
+
+    /** Back to the top left corner at one pixel per unit. */
+    void reset() {
+        zoom = 1;
+        left = 0;
+        top = 0;
+        clamp();
+    }
+
+    /**
+     * Index range of {@code snapshot} covering the grid rows the view overlaps,
+     * widened by {@code margin} screen pixels. Rows are contiguous in the
+     * snapshot, so this holds every particle that can be drawn; only the columns
+     * still need culling.
+     */
+    int rangeStart(FrameSnapshot snapshot, int margin) {
+        return snapshot.grid.rangeStart(snapshot.grid.row(worldY(-margin)), 0);
+    }
+
+    int rangeEnd(FrameSnapshot snapshot, int margin) {
+        SpatialGrid grid = snapshot.grid;
+        return grid.rangeEnd(grid.row(worldY(screenHeight + margin)), grid.cols - 1);
+    }
+
+    private double minZoom() {
+        return Math.min(1, Math.min((double) screenWidth / ParticleStore.WIDTH, (double) screenHeight / ParticleStore.HEIGHT));
+    }
+
+    private void clamp() {
+        zoom = Math.max(minZoom(), Math.min(MAX_ZOOM, zoom));
+        left = clampAxis(left, screenWidth / zoom, ParticleStore.WIDTH);
+        top = clampAxis(top, screenHeight / zoom, ParticleStore.HEIGHT);
+    }
+
+    private static double clampAxis(double start, double visible, double world) {
+        if (visible >= world) {
+            return 0;
+        }
+        return Math.max(0, Math.min(world - visible, start));
+    }
+}
@@ -0,0 +1,218 @@
+import java.util.Arrays;
+
+/**
+ * Domain decomposition of the world into vertical strips ("shards") of equal
+ * width, each stepped by its own worker. The store is kept partitioned by shard:
+ * shard {@code s} owns the contiguous index range starting at {@code start[s]},
+ * so a worker only ever touches its own particles and the strip of world they
+ * are in.
+ *
+ * A tick has three phases:
+ * <ol>
+ *   <li>every shard steps its range and then moves each particle that left its
+ *       strip into the handoff buffer for the destination shard, closing the gap
+ *       by swapping in its last particle;</li>
+ *   <li>the ranges are shifted to their new sizes, moving only as many particles
+ *       as each range shifts by (order within a shard doesn't matter);</li>
+ *   <li>each shard's incoming handoffs are copied into the space at its end.</li>
+ * </ol>
+ * Only the migrants and the range shifts cost anything beyond the step itself,
+ * and both scale with the traffic across strip edges, not with the particle count.
+ *
+ * Particles added, removed or moved outside {@link #step} (spawns, removals,
+ * loads, collisions, fast-forwards) don't need any notice: new ones start out
+ * in the last shard, removals shorten the last shards' ranges, and every
+ * particle in the wrong strip migrates on the next step.
+ *
+ * Enabled with -Dworld.shards=N. The default, 0, shards worlds larger than the
+ * canvas into one strip per worker and leaves the canvas-sized world unsharded.
+ */
+class WorldShards {
+    // particles stepped and checked per pass, small enough to still be in cache for the check
+    private static final int CHUNK = 4096;
+
+    private final int count;
+    private final double shardWidth;
+    // start[s] .. start[s + 1] is shard s; start[count] is the store size
+    private final int[] start;
+    private final int[] kept;
+    private final int[] newStart;
+    // per shard: indices of the particles that left it during the current step, ascending
+    private final int[][] leaving;
+    // handoff[from][to], only ever written by the worker stepping shard 'from'
+    private final ParticleStore[][] handoff;
+    private long lastMigrations;
+
+    WorldShards(int count) {
+        this.count = Math.max(1, count);
+        this.shardWidth = (double) ParticleStore.WIDTH / this.count;
+        this.start = new int[this.count + 1];
+        this.kept = new int[this.count];
+        this.newStart = new int[this.count + 1];
+        this.leaving = new int[this.count][64];
+        this.handoff = new ParticleStore[this.count][this.count];
+        for (int from = 0; from < this.count; from++) {
+            for (int to = 0; to < this.count; to++) {
+                handoff[from][to] = from == to ? null : new ParticleStore(64);
+            }
+        }
+    }
+
+    /** The configured sharding, or null to step the store as one block. */
+    static WorldShards fromSystemProperties(int workers) {
+        int shards = Integer.getInteger("world.shards", 0);
+        if (shards == 0) {
+            boolean large = ParticleStore.WIDTH > 1280 || ParticleStore.HEIGHT > 720;
+            shards = large ? workers : 1;
+        }
+        return shards > 1 ? new WorldShards(shards) : null;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    /** Particles currently owned by shard {@code s}. */
+    int size(int s) {
+        return start[s + 1] - start[s];
+    }
+
+    /** Particles that changed shard during the last step. */
+    long getLastMigrations() {
+        return lastMigrations;
+    }
+
+    int shardOf(double x) {
+        int s = (int) (x / shardWidth);
+        return s < 0 ? 0 : (s >= count ? count - 1 : s);
+    }
+
+    void step(ParticleStore store, ParallelStepper stepper, double deltaTime) {
+        adopt(store);
+        StepKernel kernel = stepper.getKernel();
+        stepper.forEachChunk(count, 1, (s0, s1) -> {
+            for (int s = s0; s < s1; s++) {
+                kept[s] = stepShard(store, kernel, s, deltaTime);
+            }
+        });
+        relayout(store);
+    }
+
+    /** Takes in particles appended since the last step, and trims the ranges to a store that shrank. */
+    private void adopt(ParticleStore store) {
+        int n = store.size();
+        // removals filled their gaps from the end; whatever landed in the wrong shard migrates
+        for (int s = 0; s < count; s++) {
+            start[s] = Math.min(start[s], n);
+        }
+        start[count] = n;
+    }
+
+    /**
+     * Steps shard {@code s} a cache-sized chunk at a time, noting which particles
+     * left the strip while the chunk is still hot, then moves those into the
+     * handoff buffers. Returns how many particles stayed.
+     */
+    private int stepShard(ParticleStore store, StepKernel kernel, int s, double deltaTime) {
+        for (ParticleStore buffer : handoff[s]) {
+            if (buffer != null) {
+                buffer.clear();
+            }
+        }
+        // the outer shards also own everything past the world's edges
+        double lo = s == 0 ? Double.NEGATIVE_INFINITY : s * shardWidth;
+        double hi = s == count - 1 ? Double.POSITIVE_INFINITY : (s + 1) * shardWidth;
+        int leavers = 0;
+        for (int from = start[s], end = start[s + 1]; from < end; from += CHUNK) {
+            int to = Math.min(end, from + CHUNK);
+            if (leaving[s].length < leavers + CHUNK) {
+                leaving[s] = Arrays.copyOf(leaving[s], leavers + 2 * CHUNK);
+            }
+            leavers = kernel.step(store, from, to, deltaTime, lo, hi, leaving[s], leavers);
+        }
+        return emigrate(store, s, leaving[s], leavers);
+    }
+
+    /**
+     * Moves the {@code leavers} particles at {@code left} that belong to another
+     * shard into the handoff buffers, filling each hole with the shard's last
+     * particle. Going from the highest index down means that particle has already
+     * been checked and stays.
+     */
+    private int emigrate(ParticleStore store, int s, int[] left, int leavers) {
+        double[] x = store.x;
+        ParticleStore[] out = handoff[s];
+        int end = start[s + 1];
+        for (int k = leavers - 1; k >= 0; k--) {
+            int i = left[k];
+            int to = shardOf(x[i]);
+            if (to == s) {
+                // on the strip edge by rounding only
+                continue;
+            }
+            out[to].addFrom(store, i);
+            end--;
+            store.copy(store, end, i, 1);
+        }
+        return end - start[s];
+    }
+
+    private void relayout(ParticleStore store) {
+        long migrations = 0;
+        newStart[0] = 0;
+        for (int to = 0; to < count; to++) {
+            int incoming = 0;
+            for (int from = 0; from < count; from++) {
+                if (from != to) {
+                    incoming += handoff[from][to].size();
+                }
+            }
+            migrations += incoming;
+            newStart[to + 1] = newStart[to] + kept[to] + incoming;
+        }
+        lastMigrations = migrations;
+        if (migrations == 0) {
+            return;
+        }
+        // Targets and sources are both in shard order, so moving the shards that
+        // shift left from the first up, then the ones that shift right from the
+        // last down, never lands a block on one that hasn't moved yet.
+        for (int s = 0; s < count; s++) {
+            if (newStart[s] < start[s]) {
+                moveBlock(store, start[s], kept[s], newStart[s]);
+            }
+        }
+        for (int s = count - 1; s >= 0; s--) {
+            if (newStart[s] > start[s]) {
+                moveBlock(store, start[s], kept[s], newStart[s]);
+            }
+        }
+        for (int to = 0; to < count; to++) {
+            int at = newStart[to] + kept[to];
+            for (int from = 0; from < count; from++) {
+                if (from != to) {
+                    ParticleStore in = handoff[from][to];
+                    store.copy(in, 0, at, in.size());
+                    at += in.size();
+                }
+            }
+        }
+        System.arraycopy(newStart, 0, start, 0, start.length);
+    }
+
+    /**
+     * Moves the block of {@code length} particles at {@code from} to {@code to}.
+     * Order inside the block is free, so a shift by less than the length only
+     * moves the particles that fall off one end to the other.
+     */
+    private static void moveBlock(ParticleStore store, int from, int length, int to) {
+        int shift = Math.abs(to - from);
+        if (shift >= length) {
+            store.copy(store, from, to, length);
+        } else if (to < from) {
+            store.copy(store, from + length - shift, to, shift);
+        } else {
+            store.copy(store, from, from + length, shift);
+        }
+    }
+}
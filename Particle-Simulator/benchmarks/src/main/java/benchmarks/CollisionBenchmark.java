@@ -0,0 +1,93 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Collision broadphase plus response at fixed density. The canvas size is fixed,
+ * so the particle radius shrinks as the count grows to keep the expected number
+ * of contacts per particle constant. With the grid broadphase, time per op divided
+ * by {@code particles} should stay roughly flat.
+ *
+ * {@link #collidePointSource} is the worst case instead: every particle within a
+ * unit of one point, as the "By Angle" and "By Velocity" dialogs spawn them, at
+ * the window's radius. All of them share one cell, so this measures the cap on
+ * pair tests per cell; time per particle should stay flat here too.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CollisionBenchmark {
+    // expected number of other particles within contact distance of each particle
+    private static final double CONTACTS_PER_PARTICLE = 0.5;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int particles;
+
+    Object store;
+    Object stepper;
+    Object solver;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        store = Sim.newStore(particles, 100, 11);
+        stepper = Sim.NEW_STEPPER.invoke(Runtime.getRuntime().availableProcessors(), 16_384, 50_000);
+        double contactDistance = Math.sqrt(CONTACTS_PER_PARTICLE * Sim.WIDTH * Sim.HEIGHT / (Math.PI * particles));
+        solver = Sim.NEW_COLLISION_SOLVER.invoke(contactDistance / 2);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        Sim.STEPPER_SHUTDOWN.invoke(stepper);
+    }
+
+    @Benchmark
+    public void stepAndCollide() throws Throwable {
+        Sim.STEPPER_STEP.invoke(stepper, store, 0.05);
+        Sim.COLLISION_RESOLVE.invoke(solver, store, stepper);
+    }
+
+    @State(Scope.Benchmark)
+    public static class PointSource {
+        @Param({"1000", "10000", "100000", "1000000"})
+        int particles;
+
+        Object store;
+        Object stepper;
+        Object solver;
+
+        @Setup(Level.Trial)
+        public void setup() throws Throwable {
+            store = Sim.newPointStore(particles, 100, 11);
+            stepper = Sim.NEW_STEPPER.invoke(Runtime.getRuntime().availableProcessors(), 16_384, 50_000);
+            solver = Sim.NEW_COLLISION_SOLVER.invoke(Sim.COLLISION_RADIUS);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Throwable {
+            Sim.STEPPER_SHUTDOWN.invoke(stepper);
+        }
+    }
+
+    // resolve only, so the particles stay bunched up from one op to the next
+    @Benchmark
+    public void collidePointSource(PointSource source) throws Throwable {
+        Sim.COLLISION_RESOLVE.invoke(source.solver, source.store, source.stepper);
+    }
+}
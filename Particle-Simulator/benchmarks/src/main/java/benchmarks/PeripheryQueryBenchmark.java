@@ -0,0 +1,105 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Finding the particles in the explorer's periphery: the grid lookup explorer
+ * mode uses, the full scan it replaced, and the per-tick cost of building the
+ * grid while publishing a snapshot.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PeripheryQueryBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    int particles;
+
+    Object stepper;
+    Object simulation;
+    Object frame;
+    Object grid;
+    float[] xs, ys;
+    int count;
+    double spriteX, spriteY;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        stepper = Sim.NEW_STEPPER.invoke(1, 16_384, Integer.MAX_VALUE);
+        simulation = Sim.NEW_SIMULATION.invoke(stepper);
+        Sim.SIMULATION_ADD_PARTICLES.invoke(simulation, particles, 0.0, 0.0, (double) Sim.WIDTH, (double) Sim.HEIGHT, 45.0, 100.0);
+        Sim.SIMULATION_SET_EXPLORER_MODE.invoke(simulation, true);
+        for (int i = 0; i < 100; i++) {
+            Sim.SIMULATION_MOVE_SPRITE.invoke(simulation, 5, 3);
+        }
+        Sim.SIMULATION_PUBLISH.invoke(simulation);
+        frame = Sim.SIMULATION_ACQUIRE_FRAME.invoke(simulation);
+        grid = Sim.FRAME_GRID.invoke(frame);
+        xs = (float[]) Sim.FRAME_X.invoke(frame);
+        ys = (float[]) Sim.FRAME_Y.invoke(frame);
+        count = (int) Sim.FRAME_COUNT.invoke(frame);
+        spriteX = (double) Sim.FRAME_SPRITE_X.invoke(frame);
+        spriteY = (double) Sim.FRAME_SPRITE_Y.invoke(frame);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        Sim.STEPPER_SHUTDOWN.invoke(stepper);
+    }
+
+    @Benchmark
+    public int gridQuery() throws Throwable {
+        int pw = Sim.PERIPHERY_WIDTH, ph = Sim.PERIPHERY_HEIGHT;
+        int c0 = (int) Sim.GRID_COL.invoke(grid, spriteX - pw - 1);
+        int c1 = (int) Sim.GRID_COL.invoke(grid, spriteX + pw + 1);
+        int r0 = (int) Sim.GRID_ROW.invoke(grid, spriteY - ph - 1);
+        int r1 = (int) Sim.GRID_ROW.invoke(grid, spriteY + ph + 1);
+        int visible = 0;
+        for (int r = r0; r <= r1; r++) {
+            int end = (int) Sim.GRID_RANGE_END.invoke(grid, r, c1);
+            for (int i = (int) Sim.GRID_RANGE_START.invoke(grid, r, c0); i < end; i++) {
+                if (inPeriphery(i)) {
+                    visible++;
+                }
+            }
+        }
+        return visible;
+    }
+
+    @Benchmark
+    public int fullScan() {
+        int visible = 0;
+        for (int i = 0; i < count; i++) {
+            if (inPeriphery(i)) {
+                visible++;
+            }
+        }
+        return visible;
+    }
+
+    @Benchmark
+    public void publishSnapshot() throws Throwable {
+        Sim.SIMULATION_PUBLISH.invoke(simulation);
+    }
+
+    private boolean inPeriphery(int i) {
+        return Math.abs((int) (xs[i] - spriteX)) <= Sim.PERIPHERY_WIDTH
+                && Math.abs((int) (ys[i] - spriteY)) <= Sim.PERIPHERY_HEIGHT;
+    }
+}
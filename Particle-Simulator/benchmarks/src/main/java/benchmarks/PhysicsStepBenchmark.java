@@ -0,0 +1,68 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One physics tick over the whole store, on one core and across the worker pool,
+ * with the scalar and the Vector API step kernel.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules=jdk.incubator.vector"})
+public class PhysicsStepBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    int particles;
+
+    @Param({"scalar", "vector"})
+    String kernel;
+
+    Object store;
+    Object sequential;
+    Object stepper;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        store = Sim.newStore(particles, 100, 42);
+        sequential = Sim.NEW_STEPPER.invoke(1, 16_384, 50_000);
+        stepper = Sim.NEW_STEPPER.invoke(Runtime.getRuntime().availableProcessors(), 16_384, 50_000);
+        Object stepKernel = Sim.STEP_KERNEL_FOR_NAME.invoke(kernel);
+        if (!kernel.equals("scalar") && Sim.STEP_KERNEL_NAME.invoke(stepKernel).equals("scalar")) {
+            throw new IllegalStateException("Vector kernel unavailable in the forked JVM");
+        }
+        Sim.STEPPER_SET_KERNEL.invoke(sequential, stepKernel);
+        Sim.STEPPER_SET_KERNEL.invoke(stepper, stepKernel);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        Sim.STEPPER_SHUTDOWN.invoke(sequential);
+        Sim.STEPPER_SHUTDOWN.invoke(stepper);
+    }
+
+    @Benchmark
+    public void stepSequential() throws Throwable {
+        Sim.STEPPER_STEP.invoke(sequential, store, 0.05);
+    }
+
+    @Benchmark
+    public void stepParallel() throws Throwable {
+        Sim.STEPPER_STEP.invoke(stepper, store, 0.05);
+    }
+}
@@ -0,0 +1,87 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Offscreen rasterization of one frame in developer and explorer mode. The
+ * banded and density variants run on a render pool with one worker per core.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true"})
+public class RenderBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    int particles;
+
+    Object stepper;
+    Object renderPool;
+    Object renderer;
+    Object bandedRenderer;
+    Object densityRenderer;
+    Object frame;
+    float[] xs, ys;
+    int count;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        stepper = Sim.NEW_STEPPER.invoke(1, 16_384, Integer.MAX_VALUE);
+        Object simulation = Sim.NEW_SIMULATION.invoke(stepper);
+        Sim.SIMULATION_ADD_PARTICLES.invoke(simulation, particles, 0.0, 0.0, (double) Sim.WIDTH, (double) Sim.HEIGHT, 45.0, 100.0);
+        Sim.SIMULATION_SET_EXPLORER_MODE.invoke(simulation, true);
+        Sim.SIMULATION_PUBLISH.invoke(simulation);
+        frame = Sim.SIMULATION_ACQUIRE_FRAME.invoke(simulation);
+        xs = (float[]) Sim.FRAME_X.invoke(frame);
+        ys = (float[]) Sim.FRAME_Y.invoke(frame);
+        count = (int) Sim.FRAME_COUNT.invoke(frame);
+        renderer = Sim.NEW_RENDERER.invoke(Sim.WIDTH, Sim.HEIGHT, 10);
+        renderPool = Sim.NEW_STEPPER.invoke(Runtime.getRuntime().availableProcessors(), 16_384, 50_000);
+        bandedRenderer = Sim.NEW_BANDED_RENDERER.invoke(Sim.WIDTH, Sim.HEIGHT, 10, renderPool);
+        densityRenderer = Sim.NEW_DENSITY_RENDERER.invoke(Sim.WIDTH, Sim.HEIGHT, renderPool);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        Sim.STEPPER_SHUTDOWN.invoke(stepper);
+        Sim.STEPPER_SHUTDOWN.invoke(renderPool);
+    }
+
+    @Benchmark
+    public void developerMode() throws Throwable {
+        Sim.RENDERER_CLEAR.invoke(renderer, 0);
+        Sim.RENDERER_DRAW_PARTICLES.invoke(renderer, xs, ys, 0, count, Sim.PARTICLE_COLOR);
+    }
+
+    @Benchmark
+    public void developerModeBanded() throws Throwable {
+        Sim.RENDERER_DRAW_DEVELOPER_VIEW.invoke(bandedRenderer, frame, 0, Sim.PARTICLE_COLOR);
+    }
+
+    @Benchmark
+    public int developerModeDensity() throws Throwable {
+        return (int) Sim.DENSITY_DRAW.invoke(densityRenderer, xs, ys, count,
+                (int[]) Sim.RENDERER_GET_PIXELS.invoke(renderer));
+    }
+
+    @Benchmark
+    public int explorerMode() throws Throwable {
+        Sim.RENDERER_CLEAR.invoke(renderer, 0);
+        return (int) Sim.RENDERER_DRAW_EXPLORER_VIEW.invoke(renderer, frame, Sim.PARTICLE_COLOR);
+    }
+}
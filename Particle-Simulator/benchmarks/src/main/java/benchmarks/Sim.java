@@ -0,0 +1,153 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.SplittableRandom;
+
+/**
+ * Method handles into the simulator. Its classes live in the default package,
+ * which Java code in a named package can't reference, and JMH refuses benchmarks
+ * in the default package. The handles are static finals, so the JIT inlines them
+ * like direct calls.
+ */
+final class Sim {
+    static final Class<?> PARTICLE_STORE = load("ParticleStore");
+    static final Class<?> PARALLEL_STEPPER = load("ParallelStepper");
+    static final Class<?> SIMULATION = load("Simulation");
+    static final Class<?> FRAME_SNAPSHOT = load("FrameSnapshot");
+    static final Class<?> SPATIAL_GRID = load("SpatialGrid");
+    static final Class<?> RASTER_RENDERER = load("RasterRenderer");
+    static final Class<?> COLLISION_SOLVER = load("CollisionSolver");
+    static final Class<?> DENSITY_RENDERER = load("DensityRenderer");
+    static final Class<?> STEP_KERNEL = load("StepKernel");
+
+    static final MethodHandle NEW_STORE = constructor(PARTICLE_STORE, int.class);
+    static final MethodHandle STORE_ADD_COMPONENTS = virtual(PARTICLE_STORE, "addComponents", void.class,
+            double.class, double.class, double.class, double.class);
+    static final MethodHandle STORE_STEP = virtual(PARTICLE_STORE, "step", void.class, double.class);
+
+    static final MethodHandle NEW_STEPPER = constructor(PARALLEL_STEPPER, int.class, int.class, int.class);
+    static final MethodHandle STEPPER_STEP = virtual(PARALLEL_STEPPER, "step", void.class, PARTICLE_STORE, double.class);
+    static final MethodHandle STEPPER_SHUTDOWN = virtual(PARALLEL_STEPPER, "shutdown", void.class);
+    static final MethodHandle STEPPER_SET_KERNEL = virtual(PARALLEL_STEPPER, "setKernel", void.class, STEP_KERNEL);
+    static final MethodHandle STEP_KERNEL_FOR_NAME = staticMethod(STEP_KERNEL, "forName", STEP_KERNEL, String.class);
+    static final MethodHandle STEP_KERNEL_NAME = virtual(STEP_KERNEL, "name", String.class);
+
+    static final MethodHandle NEW_SIMULATION = constructor(SIMULATION, PARALLEL_STEPPER);
+    static final MethodHandle SIMULATION_ADD_PARTICLES = virtual(SIMULATION, "addParticles", void.class,
+            int.class, double.class, double.class, double.class, double.class, double.class, double.class);
+    static final MethodHandle SIMULATION_SET_EXPLORER_MODE = virtual(SIMULATION, "setExplorerMode", void.class, boolean.class);
+    static final MethodHandle SIMULATION_MOVE_SPRITE = virtual(SIMULATION, "moveExplorerSprite", void.class, int.class, int.class);
+    static final MethodHandle SIMULATION_PUBLISH = virtual(SIMULATION, "publish", void.class);
+    static final MethodHandle SIMULATION_ACQUIRE_FRAME = virtual(SIMULATION, "acquireFrame", FRAME_SNAPSHOT);
+
+    static final MethodHandle FRAME_X = getter(FRAME_SNAPSHOT, "x", float[].class);
+    static final MethodHandle FRAME_Y = getter(FRAME_SNAPSHOT, "y", float[].class);
+    static final MethodHandle FRAME_COUNT = getter(FRAME_SNAPSHOT, "count", int.class);
+    static final MethodHandle FRAME_GRID = getter(FRAME_SNAPSHOT, "grid", SPATIAL_GRID);
+    static final MethodHandle FRAME_SPRITE_X = getter(FRAME_SNAPSHOT, "spriteX", double.class);
+    static final MethodHandle FRAME_SPRITE_Y = getter(FRAME_SNAPSHOT, "spriteY", double.class);
+
+    static final MethodHandle GRID_COL = virtual(SPATIAL_GRID, "col", int.class, double.class);
+    static final MethodHandle GRID_ROW = virtual(SPATIAL_GRID, "row", int.class, double.class);
+    static final MethodHandle GRID_RANGE_START = virtual(SPATIAL_GRID, "rangeStart", int.class, int.class, int.class);
+    static final MethodHandle GRID_RANGE_END = virtual(SPATIAL_GRID, "rangeEnd", int.class, int.class, int.class);
+
+    static final MethodHandle NEW_RENDERER = constructor(RASTER_RENDERER, int.class, int.class, int.class);
+    static final MethodHandle NEW_BANDED_RENDERER = constructor(RASTER_RENDERER, int.class, int.class, int.class,
+            PARALLEL_STEPPER);
+    static final MethodHandle RENDERER_GET_PIXELS = virtual(RASTER_RENDERER, "getPixels", int[].class);
+    static final MethodHandle RENDERER_CLEAR = virtual(RASTER_RENDERER, "clear", void.class, int.class);
+    static final MethodHandle RENDERER_DRAW_PARTICLES = virtual(RASTER_RENDERER, "drawParticles", void.class,
+            float[].class, float[].class, int.class, int.class, int.class);
+    static final MethodHandle RENDERER_DRAW_EXPLORER_VIEW = virtual(RASTER_RENDERER, "drawExplorerView", int.class,
+            FRAME_SNAPSHOT, int.class);
+    static final MethodHandle RENDERER_DRAW_DEVELOPER_VIEW = virtual(RASTER_RENDERER, "drawDeveloperView", void.class,
+            FRAME_SNAPSHOT, int.class, int.class);
+
+    static final MethodHandle NEW_DENSITY_RENDERER = constructor(DENSITY_RENDERER, int.class, int.class, PARALLEL_STEPPER);
+    static final MethodHandle DENSITY_DRAW = virtual(DENSITY_RENDERER, "draw", int.class,
+            float[].class, float[].class, int.class, int[].class);
+
+    static final MethodHandle NEW_COLLISION_SOLVER = constructor(COLLISION_SOLVER, double.class);
+    static final MethodHandle COLLISION_RESOLVE = virtual(COLLISION_SOLVER, "resolve", void.class,
+            PARTICLE_STORE, PARALLEL_STEPPER);
+
+    static final int WIDTH = 1280;
+    static final int HEIGHT = 720;
+    static final int PERIPHERY_WIDTH = 33;
+    static final int PERIPHERY_HEIGHT = 19;
+    static final int PARTICLE_COLOR = 0x00FF00;
+    static final double COLLISION_RADIUS = 5;
+
+    private Sim() {}
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandles.Lookup lookup(Class<?> type) throws IllegalAccessException {
+        return MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+    }
+
+    private static MethodHandle constructor(Class<?> type, Class<?>... params) {
+        try {
+            return lookup(type).findConstructor(type, MethodType.methodType(void.class, params));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle virtual(Class<?> type, String name, Class<?> returnType, Class<?>... params) {
+        try {
+            return lookup(type).findVirtual(type, name, MethodType.methodType(returnType, params));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle staticMethod(Class<?> type, String name, Class<?> returnType, Class<?>... params) {
+        try {
+            return lookup(type).findStatic(type, name, MethodType.methodType(returnType, params));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle getter(Class<?> type, String name, Class<?> fieldType) {
+        try {
+            return lookup(type).findGetter(type, name, fieldType);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /** Fills a store with particles spread over the canvas, moving at {@code speed} in random directions. */
+    static Object newStore(int count, double speed, long seed) throws Throwable {
+        Object store = NEW_STORE.invoke(count);
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < count; i++) {
+            double angle = random.nextDouble(2 * Math.PI);
+            STORE_ADD_COMPONENTS.invoke(store, random.nextDouble(WIDTH), random.nextDouble(HEIGHT),
+                    speed * Math.cos(angle), speed * Math.sin(angle));
+        }
+        return store;
+    }
+
+    /** Fills a store with particles within a unit of the canvas centre, moving at {@code speed} in random directions. */
+    static Object newPointStore(int count, double speed, long seed) throws Throwable {
+        Object store = NEW_STORE.invoke(count);
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < count; i++) {
+            double angle = random.nextDouble(2 * Math.PI);
+            STORE_ADD_COMPONENTS.invoke(store, WIDTH / 2 + random.nextDouble(-1, 1), HEIGHT / 2 + random.nextDouble(-1, 1),
+                    speed * Math.cos(angle), speed * Math.sin(angle));
+        }
+        return store;
+    }
+}
@@ -0,0 +1,47 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Prices the wall checks. At speed 0 nothing ever reflects, at 100 a few
+ * particles per tick do, and at 100000 a particle covers several canvas widths per
+ * tick so most steps take the reflection branch unpredictably.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class WallReflectionBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    int particles;
+
+    @Param({"0", "100", "100000"})
+    double speed;
+
+    Object store;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        store = Sim.newStore(particles, speed, 7);
+    }
+
+    @Benchmark
+    public void step() throws Throwable {
+        Sim.STORE_STEP.invoke(store, 0.05);
+    }
+}